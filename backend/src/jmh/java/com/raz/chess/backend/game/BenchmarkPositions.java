@@ -0,0 +1,31 @@
+package com.raz.chess.backend.lobby;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public final class BenchmarkPositions {
+	// the corpus every benchmark runs over, by phase of the game
+	public static final Map<String, String> FENS = new LinkedHashMap<>();
+
+	static {
+		// opening
+		FENS.put("start", "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1");
+		FENS.put("italian", "r1bqk1nr/pppp1ppp/2n5/2b1p3/2B1P3/5N2/PPPP1PPP/RNBQK2R w KQkq - 4 4");
+		// middlegame
+		FENS.put("kiwipete", "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1");
+		FENS.put("middlegame", "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10");
+		// endgame
+		FENS.put("rookEndgame", "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1");
+		FENS.put("queenEndgame", "8/8/8/4k3/8/8/3QK3/8 b - - 0 1");
+	}
+
+	private BenchmarkPositions() {
+	}
+
+	public static GameState gameState(String name) {
+		GameState game = Fen.toGameState(FENS.get(name));
+		game.setWhitePlayer("white");
+		game.setBlackPlayer("black");
+		return game;
+	}
+}
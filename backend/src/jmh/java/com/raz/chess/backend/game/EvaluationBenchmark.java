@@ -0,0 +1,52 @@
+package com.raz.chess.backend.lobby;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class EvaluationBenchmark {
+	// the static evaluation the bot calls at every leaf, alone and with the make/unmake that keeps its sums
+
+	@Param({"start", "kiwipete", "middlegame", "rookEndgame"})
+	public String position;
+
+	private Position pos;
+	private int move;
+
+	@Setup
+	public void setup() {
+		pos = Position.fromGameState(BenchmarkPositions.gameState(position));
+		MoveList moves = new MoveList();
+		GameRules.generateLegalMoves(pos, moves);
+		move = moves.get(0);
+	}
+
+	@Benchmark
+	public int evaluate() {
+		return Evaluation.evaluate(pos);
+	}
+
+	@Benchmark
+	public int makeEvaluateUnmake() {
+		pos.makeMove(move);
+		int score = Evaluation.evaluate(pos);
+		pos.unmakeMove();
+		return score;
+	}
+}
@@ -0,0 +1,52 @@
+package com.raz.chess.backend.lobby;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class FenBenchmark {
+	// setting a position up from FEN and writing one back out
+
+	@Param({"start", "kiwipete", "middlegame", "rookEndgame"})
+	public String position;
+
+	private String fen;
+	private GameState game;
+
+	@Setup
+	public void setup() {
+		fen = BenchmarkPositions.FENS.get(position);
+		game = Fen.toGameState(fen);
+	}
+
+	@Benchmark
+	public GameState toGameState() {
+		return Fen.toGameState(fen);
+	}
+
+	@Benchmark
+	public Position toPosition() {
+		return Fen.toPosition(fen);
+	}
+
+	@Benchmark
+	public String writeGameState() {
+		return Fen.of(game);
+	}
+}
@@ -0,0 +1,76 @@
+package com.raz.chess.backend.lobby;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class GameRulesBenchmark {
+	// the public GameRules entry points the server calls on every move, one op is one whole position
+
+	@Param({"start", "italian", "kiwipete", "middlegame", "rookEndgame", "queenEndgame"})
+	public String position;
+
+	private GameState game;
+	private char colour;
+	private char enemy;
+	private int[] pieces; // squares of the side to move's pieces
+
+	@Setup
+	public void setup() {
+		game = BenchmarkPositions.gameState(position);
+		colour = game.getTurn().equals("WHITE") ? 'w' : 'b';
+		enemy = colour == 'w' ? 'b' : 'w';
+
+		int count = 0;
+		int[] squares = new int[16];
+		for (int sq = 0; sq < 64; sq++) {
+			String id = game.getBoard().get(Position.rowOf(sq), Position.colOf(sq));
+			if (id != null && id.charAt(0) == colour) squares[count++] = sq;
+		}
+		pieces = Arrays.copyOf(squares, count);
+	}
+
+	@Benchmark
+	public void computeLegalMoves(Blackhole bh) {
+		// what the client asks for when a piece is picked up, for every piece we have
+		for (int sq : pieces) {
+			bh.consume(GameRules.computeLegalMoves(game, Position.rowOf(sq), Position.colOf(sq)));
+		}
+	}
+
+	@Benchmark
+	public void isSquareAttacked(Blackhole bh) {
+		Board board = game.getBoard();
+		for (int sq = 0; sq < 64; sq++) {
+			bh.consume(GameRules.isSquareAttacked(board, Position.rowOf(sq), Position.colOf(sq), enemy));
+		}
+	}
+
+	@Benchmark
+	public boolean hasAnyLegalMove() {
+		return GameRules.hasAnyLegalMove(game, colour);
+	}
+
+	@Benchmark
+	public GameState.Status evaluateStatus() {
+		return GameRules.evaluateStatus(game, colour);
+	}
+}
@@ -0,0 +1,66 @@
+package com.raz.chess.backend.lobby;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class GameServiceBenchmark {
+	// a full move as the controller sees it: lookup, validation, board update, position key, status and delta
+
+	// both knights out and back, so every op is a legal move. the game would be drawn by repetition on the
+	// second lap, so the draw bookkeeping is wiped at the end of each lap to keep it going
+	private static final int[][] SHUFFLE = {
+		{7, 6, 5, 5}, // Ng1-f3
+		{0, 6, 2, 5}, // Ng8-f6
+		{5, 5, 7, 6}, // Nf3-g1
+		{2, 5, 0, 6}, // Nf6-g8
+	};
+
+	private GameService service;
+	private GameState game;
+	private Move[] moves;
+	private int next;
+
+	@Setup(Level.Iteration)
+	public void setup() {
+		service = new GameService(MoveJournal.disabled(), GameSnapshots.disabled(), GameArchive.disabled());
+		game = service.startGame(new LobbyState("white", "black"));
+		// keep the mystery box out of it, its spawn is random and would make runs incomparable
+		game.setMovesUntilMysteryBox(Integer.MAX_VALUE);
+
+		moves = new Move[SHUFFLE.length];
+		for (int i = 0; i < SHUFFLE.length; i++) {
+			int[] m = SHUFFLE[i];
+			moves[i] = new Move(m[0], m[1], m[2], m[3], i % 2 == 0 ? "white" : "black");
+			moves[i].setGameId(game.getGameId());
+		}
+		next = 0;
+	}
+
+	@Benchmark
+	public MoveDelta applyMove() {
+		MoveDelta delta = service.applyMove(moves[next]);
+		next = (next + 1) & 3;
+		if (next == 0) {
+			game.getRepetitions().clear();
+			game.setHalfmoveClock(0);
+		}
+		return delta;
+	}
+}
@@ -0,0 +1,45 @@
+package com.raz.chess.backend.config;
+
+import java.util.Map;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.AbstractMessageConverter;
+import org.springframework.util.MimeType;
+
+import com.raz.chess.backend.lobby.BinaryCodec;
+import com.raz.chess.backend.lobby.GameState;
+import com.raz.chess.backend.lobby.Move;
+import com.raz.chess.backend.lobby.MoveDelta;
+
+public class BinaryMessageConverter extends AbstractMessageConverter {
+	// octet-stream so STOMP sends the frames as binary websocket messages, the parameter tells it apart from raw byte[]
+	public static final MimeType MIME_TYPE = new MimeType("application", "octet-stream", Map.of("format", "chess"));
+
+	public BinaryMessageConverter() {
+		super(MIME_TYPE);
+		// only messages that say they're binary, everything else carries on to the JSON converter
+		setStrictContentTypeMatch(true);
+	}
+
+	@Override
+	protected boolean supports(Class<?> clazz) {
+		return clazz == Move.class || clazz == MoveDelta.class || clazz == GameState.class;
+	}
+
+	@Override
+	protected Object convertFromInternal(Message<?> message, Class<?> targetClass, Object conversionHint) {
+		if (!(message.getPayload() instanceof byte[] bytes)) return null;
+		if (targetClass == Move.class) return BinaryCodec.decodeMove(bytes);
+		if (targetClass == GameState.class) return BinaryCodec.decodeState(bytes);
+		return null; // deltas only go out
+	}
+
+	@Override
+	protected Object convertToInternal(Object payload, MessageHeaders headers, Object conversionHint) {
+		if (payload instanceof MoveDelta delta) return BinaryCodec.encodeDelta(delta);
+		if (payload instanceof GameState game) return BinaryCodec.encodeState(game);
+		if (payload instanceof Move move) return BinaryCodec.encodeMove(move);
+		return null;
+	}
+}
@@ -1,24 +1,74 @@
 package com.raz.chess.backend.config;
 
+import java.util.List;
+import java.util.Map;
+
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.web.socket.WebSocketHandler;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+
+import com.raz.chess.backend.lobby.BinarySubscriptions;
 
 @Configuration
 @EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
+	private final BinarySubscriptions binarySubscriptions;
+
+	public WebSocketConfig(BinarySubscriptions binarySubscriptions) {
+		this.binarySubscriptions = binarySubscriptions;
+	}
+
 	@Override
 	public void registerStompEndpoints(StompEndpointRegistry registry) {
 		registry.addEndpoint("/ws")
 		.setAllowedOrigins("http://localhost:5173")
 		.withSockJS();
+
+		// plain websocket, no SockJS fallback, the only place the binary format can be negotiated
+		registry.addEndpoint("/ws-raw")
+		.setAllowedOrigins("http://localhost:5173")
+		.addInterceptors(new RawTransportInterceptor());
 	}
-	
+
 	@Override
 	public void configureMessageBroker(MessageBrokerRegistry registry) {
-		registry.enableSimpleBroker("/topic"); // server -> client
+		registry.enableSimpleBroker("/topic", "/queue"); // server -> client, per game topics are /topic/game/{gameId} and /topic/chat/{gameId}
 		registry.setApplicationDestinationPrefixes("/app"); // client -> server
+		registry.setUserDestinationPrefix("/user"); // server -> one client, e.g. /user/queue/errors for rejected moves
+	}
+
+	@Override
+	public boolean configureMessageConverters(List<MessageConverter> messageConverters) {
+		// binary first, it only takes messages tagged with its content type
+		// returning true keeps the default converters (JSON) behind it as the fallback
+		messageConverters.add(new BinaryMessageConverter());
+		return true;
+	}
+
+	@Override
+	public void configureClientInboundChannel(ChannelRegistration registration) {
+		registration.interceptors(binarySubscriptions);
+	}
+
+	private static class RawTransportInterceptor implements HandshakeInterceptor {
+		@Override
+		public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+				WebSocketHandler wsHandler, Map<String, Object> attributes) {
+			attributes.put(BinarySubscriptions.RAW_TRANSPORT, Boolean.TRUE);
+			return true;
+		}
+
+		@Override
+		public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+				WebSocketHandler wsHandler, Exception exception) {
+		}
 	}
 }
@@ -0,0 +1,59 @@
+package com.raz.chess.backend.lobby;
+
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+@RestController
+@RequestMapping("/archive")
+public class ArchiveController {
+	// finished games over plain HTTP, for analysis tools rather than the game client
+	private static final MediaType PGN = MediaType.parseMediaType("application/x-chess-pgn;charset=UTF-8");
+
+	private final GameArchive archive;
+
+	public ArchiveController(GameArchive archive) {
+		this.archive = archive;
+	}
+
+	@GetMapping("/games/{gameId}") // one game as PGN
+	public ResponseEntity<String> game(@PathVariable("gameId") String gameId) throws Exception {
+		ArchivedGame game = archive.find(gameId);
+		if (game == null) return ResponseEntity.notFound().build();
+
+		StringBuilder pgn = new StringBuilder(1024);
+		Pgn.write(game, pgn);
+		return ResponseEntity.ok().contentType(PGN).body(pgn.toString());
+	}
+
+	@GetMapping("/games") // every game, or one player's with ?player=, as PGN or ?format=fen for final positions
+	public ResponseEntity<StreamingResponseBody> games(@RequestParam(value = "player", required = false) String player,
+			@RequestParam(value = "format", defaultValue = "pgn") String format) {
+		boolean fen = "fen".equalsIgnoreCase(format);
+
+		// written as the archive is read, one game at a time, so an export of any size never sits in memory
+		StreamingResponseBody body = out -> {
+			Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+			archive.export(player, game -> {
+				if (fen) {
+					writer.write(Pgn.finalFen(game));
+					writer.write('\n');
+				} else {
+					Pgn.write(game, writer);
+				}
+			});
+			writer.flush();
+		};
+		return ResponseEntity.ok().contentType(fen ? MediaType.TEXT_PLAIN : PGN).body(body);
+	}
+}
@@ -0,0 +1,33 @@
+package com.raz.chess.backend.lobby;
+
+import java.util.Map;
+
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Component;
+
+import com.raz.chess.backend.config.BinaryMessageConverter;
+
+@Component
+public class GameBroadcaster {
+	// sends a move to everyone watching its game, whoever made it (a player's frame or the bot)
+
+    private static final Map<String, Object> BINARY_HEADERS = Map.of(MessageHeaders.CONTENT_TYPE, BinaryMessageConverter.MIME_TYPE);
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final BinarySubscriptions binarySubscriptions;
+
+    public GameBroadcaster(SimpMessagingTemplate template, BinarySubscriptions binarySubscriptions) {
+        this.messagingTemplate = template;
+        this.binarySubscriptions = binarySubscriptions;
+    }
+
+    public void publishMove(MoveDelta delta) {
+        // just what changed, full snapshots only go out on (re)subscribe
+        String topic = "/topic/game/" + delta.getGameId();
+        messagingTemplate.convertAndSend(topic, delta);
+        if (binarySubscriptions.hasSubscribers(delta.getGameId())) {
+            messagingTemplate.convertAndSend(topic + BinarySubscriptions.BINARY_SUFFIX, delta, BINARY_HEADERS);
+        }
+    }
+}
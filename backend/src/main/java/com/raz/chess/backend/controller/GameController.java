@@ -1,7 +1,12 @@
 package com.raz.chess.backend.lobby;
 
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.handler.annotation.DestinationVariable;
 import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.annotation.SubscribeMapping;
 import org.springframework.stereotype.Controller;
 
 @Controller
@@ -9,19 +14,65 @@ public class GameController {
 
     private final GameService gameService;
     private final SimpMessagingTemplate messagingTemplate;
+    private final GameBroadcaster broadcaster;
+    private final BotService botService;
 
-    public GameController(GameService gameService, SimpMessagingTemplate template) {
+    public GameController(GameService gameService, SimpMessagingTemplate template, GameBroadcaster broadcaster, BotService botService) {
         this.gameService = gameService;
         this.messagingTemplate = template;
+        this.broadcaster = broadcaster;
+        this.botService = botService;
     }
 
-    @MessageMapping("/move") // /app/move
-    public void handleMove(Move move) {
-        GameState updated = gameService.applyMove(move);
-        if (updated != null) {
-            // broadcast new game state to everyone
-            messagingTemplate.convertAndSend("/topic/game", updated);
+    @MessageMapping("/move") // /app/move, JSON or binary depending on the frame's content-type
+    public void handleMove(Move move, SimpMessageHeaderAccessor headerAccessor) {
+        // the bot's moves never come through here, so one sent in its name is someone playing for it
+        MoveDelta delta = BotService.isReserved(move.getPlayer()) ? null : gameService.applyMove(move);
+        if (delta != null) {
+            // broadcast just what changed to the players of this game, then let the bot reply if it's playing
+            broadcaster.publishMove(delta);
+            botService.onMove(delta.getGameId());
+            return;
         }
-        // else: illegal move, do nothing. perhaps send a warning?
+
+        // illegal move, tell just the sender (/user/queue/errors)
+        String reason = gameService.getGame(move.getGameId()) == null ? "Unknown game" : "Illegal move";
+        String sessionId = headerAccessor.getSessionId();
+        messagingTemplate.convertAndSendToUser(sessionId, "/queue/errors",
+                new MoveRejection(move.getGameId(), reason, move), sessionHeaders(sessionId));
+    }
+
+    @SubscribeMapping("/game/{gameId}") // client subscribes to /app/game/{gameId}
+    public Object handleGameSubscribe(@DestinationVariable String gameId, SimpMessageHeaderAccessor headerAccessor) {
+        // reply straight to the subscriber with the full state, deltas then come on /topic/game/{gameId}
+        // clients also come back here to resync if they miss a sequence number
+        // either way the state is taken under the game's lock, so its sequence always matches its board
+        GameState game = gameService.getGame(gameId);
+        if (game == null) return null;
+        synchronized (game) {
+            // replies can't carry a content-type, so binary sessions get the encoded bytes as they are
+            if (BinarySubscriptions.isBinary(headerAccessor)) return BinaryCodec.encodeState(game);
+            return game.copy();
+        }
+    }
+
+    @SubscribeMapping("/game/{gameId}/moves") // client subscribes to /app/game/{gameId}/moves
+    public LegalMoves handleLegalMovesSubscribe(@DestinationVariable String gameId) {
+        // every legal move in the current position, so picking up pieces needs no round trip
+        return gameService.getLegalMoves(gameId);
+    }
+
+    @SubscribeMapping("/game/{gameId}/eval") // client subscribes to /app/game/{gameId}/eval
+    public Advantage handleAdvantageSubscribe(@DestinationVariable String gameId) {
+        // how the position stands for the advantage bar, asked for after each move
+        return gameService.getAdvantage(gameId);
+    }
+
+    private MessageHeaders sessionHeaders(String sessionId) {
+        // players aren't authenticated, so user destinations are resolved by session id
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(sessionId);
+        accessor.setLeaveMutable(true);
+        return accessor.getMessageHeaders();
     }
 }
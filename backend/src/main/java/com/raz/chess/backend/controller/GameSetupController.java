@@ -0,0 +1,68 @@
+package com.raz.chess.backend.lobby;
+
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/games")
+public class GameSetupController {
+	// games set up from a position over plain HTTP, for puzzles, tests and tools. players then play them over
+	// STOMP like any other game, subscribing to /topic/game/{gameId} with the id this returns
+	private final GameService gameService;
+	private final BotService botService;
+
+	public GameSetupController(GameService gameService, BotService botService) {
+		this.gameService = gameService;
+		this.botService = botService;
+	}
+
+	@PostMapping // {"white": ..., "black": ..., "fen": ...}, replies with the new game
+	public ResponseEntity<?> start(@RequestBody GameSetup setup) {
+		if (setup.getWhite() == null || setup.getBlack() == null) {
+			return ResponseEntity.badRequest().body("Both players are needed");
+		}
+		// the bot's name puts the computer on that side, near misses of it aren't anyone's
+		if (isLookalike(setup.getWhite()) || isLookalike(setup.getBlack())) {
+			return ResponseEntity.badRequest().body(BotService.BOT_NAME + " is kept for the computer");
+		}
+
+		GameState game;
+		try {
+			game = gameService.startGame(setup.getWhite(), setup.getBlack(), setup.getFen());
+		} catch (IllegalArgumentException e) {
+			return ResponseEntity.badRequest().body(e.getMessage());
+		}
+
+		// the reply is the game as it started, copied before the bot can move in it
+		GameState started;
+		synchronized (game) {
+			started = game.copy();
+		}
+
+		// either side or both can be the computer, it moves at once if it's to play
+		if (BotService.BOT_NAME.equals(setup.getWhite()) || BotService.BOT_NAME.equals(setup.getBlack())) {
+			botService.adopt(game, BotService.BOT_NAME);
+		}
+		return ResponseEntity.ok(started);
+	}
+
+	private static boolean isLookalike(String name) {
+		return BotService.isReserved(name) && !BotService.BOT_NAME.equals(name);
+	}
+
+	@GetMapping("/{gameId}/fen") // the position a running game is in
+	public ResponseEntity<String> fen(@PathVariable("gameId") String gameId) {
+		GameState game = gameService.getGame(gameId);
+		if (game == null) return ResponseEntity.notFound().build();
+
+		synchronized (game) {
+			return ResponseEntity.ok().contentType(MediaType.TEXT_PLAIN).body(Fen.of(game));
+		}
+	}
+}
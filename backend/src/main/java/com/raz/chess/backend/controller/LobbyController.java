@@ -1,6 +1,7 @@
 package com.raz.chess.backend.lobby;
 
 import java.time.Instant;
+import org.springframework.messaging.handler.annotation.DestinationVariable;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.SendTo;
 import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
@@ -11,11 +12,13 @@ import org.springframework.stereotype.Controller;
 public class LobbyController {
 	private final LobbyService lobbyService;
 	private final GameService gameService;
+	private final BotService botService;
 	private final SimpMessagingTemplate messagingTemplate;
 	
-	public LobbyController(LobbyService lobbyService, GameService gameService, SimpMessagingTemplate template) {
+	public LobbyController(LobbyService lobbyService, GameService gameService, BotService botService, SimpMessagingTemplate template) {
 		this.lobbyService = lobbyService;
 		this.gameService = gameService;
+		this.botService = botService;
 		this.messagingTemplate = template;
 	}
 	
@@ -23,6 +26,16 @@ public class LobbyController {
 	@SendTo("/topic/lobby") // broadcast to /topic/lobby
 	public LobbyState handleJoin(JoinMessage join, SimpMessageHeaderAccessor headerAccessor) {
 		String sessionId = headerAccessor.getSessionId();
+		if (BotService.isReserved(join.getName())) {
+			// the bot's seat is taken with the bot option, a player can't sit down under its name
+			messagingTemplate.convertAndSend("/topic/chat", new ChatMessage(
+				ChatMessage.Type.SYSTEM, 
+				"SYSTEM", 
+				join.getName() + " is the computer's name, join under another one", 
+				Instant.now().toString()
+			));
+			return lobbyService.getState();
+		}
 		LobbyState state = lobbyService.join(join.getName(), sessionId);
 		
 		// send system message
@@ -36,6 +49,35 @@ public class LobbyController {
 		System.out.println("Player joined: " + join.getName() + "(session id: " + sessionId + ")");
 		messagingTemplate.convertAndSend("/topic/chat", sys);
 		
+		// asked to start from a position, checked now so a bad FEN doesn't stop the game starting later
+		if (join.getFen() != null && !join.getFen().isBlank()) {
+			String note;
+			try {
+				Fen.toGameState(join.getFen());
+				state = lobbyService.setFen(join.getFen().trim());
+				note = "The game will start from " + state.getFen();
+			} catch (IllegalArgumentException e) {
+				note = "Can't start from that position, " + e.getMessage();
+			}
+			messagingTemplate.convertAndSend("/topic/chat", new ChatMessage(
+				ChatMessage.Type.SYSTEM, 
+				"SYSTEM", 
+				note, 
+				Instant.now().toString()
+			));
+		}
+		
+		// asked to play the computer, it takes the other seat
+		if (join.isBot() && (state.getPlayer1() == null || state.getPlayer2() == null)) {
+			state = lobbyService.seatBot(BotService.BOT_NAME);
+			messagingTemplate.convertAndSend("/topic/chat", new ChatMessage(
+				ChatMessage.Type.SYSTEM, 
+				"SYSTEM", 
+				BotService.BOT_NAME + " joined the lobby", 
+				Instant.now().toString()
+			));
+		}
+		
 		// check if we need to wait for another player
 		if (state.getPlayer1() != null && state.getPlayer2() != null) {
 			ChatMessage m = new ChatMessage(
@@ -46,9 +88,14 @@ public class LobbyController {
 			);
 			messagingTemplate.convertAndSend("/topic/chat", m);
 			
-			// start game
+			// start game, the lobby broadcast carries the id so clients can subscribe to /topic/game/{gameId}
 			GameState game = gameService.startGame(state);
-			messagingTemplate.convertAndSend("/topic/game", game);
+			state.setGameId(game.getGameId());
+			gameService.abandonGame(lobbyService.startedGame(game.getGameId()));
+			if (lobbyService.isBot(state.getPlayer1()) || lobbyService.isBot(state.getPlayer2())) {
+				// if the bot is to move its first move comes off the worker pool, after this lobby broadcast
+				botService.adopt(game, lobbyService.isBot(state.getPlayer1()) ? state.getPlayer1() : state.getPlayer2());
+			}
 		} else if (state.getPlayer1() != null || state.getPlayer2() != null) {
 			ChatMessage m = new ChatMessage(
 				ChatMessage.Type.SYSTEM, 
@@ -65,6 +112,16 @@ public class LobbyController {
 	@MessageMapping("/chat")
 	@SendTo("/topic/chat")
 	public ChatMessage handleChat(ChatMessage incoming) {
+		return stamp(incoming);
+	}
+	
+	@MessageMapping("/chat/{gameId}") // in game chat, only the players of that game get it
+	@SendTo("/topic/chat/{gameId}")
+	public ChatMessage handleGameChat(@DestinationVariable String gameId, ChatMessage incoming) {
+		return stamp(incoming);
+	}
+	
+	private ChatMessage stamp(ChatMessage incoming) {
 		ChatMessage msg = new ChatMessage();
 		msg.setType(ChatMessage.Type.CHAT);
 		msg.setSender(incoming.getSender());
@@ -0,0 +1,26 @@
+package com.raz.chess.backend.lobby;
+
+public class Advantage {
+	// how a game stands, for the spectator advantage bar
+	private String gameId;
+	private long seq;
+	private int score; // centipawns, positive when white is better
+
+	public Advantage() {
+	}
+
+	public Advantage(String gameId, long seq, int score) {
+		this.gameId = gameId;
+		this.seq = seq;
+		this.score = score;
+	}
+
+	public String getGameId() { return gameId; }
+	public void setGameId(String gameId) { this.gameId = gameId; }
+
+	public long getSeq() { return seq; }
+	public void setSeq(long seq) { this.seq = seq; }
+
+	public int getScore() { return score; }
+	public void setScore(int score) { this.score = score; }
+}
@@ -0,0 +1,70 @@
+package com.raz.chess.backend.lobby;
+
+public class ArchivedGame {
+	// a finished game as the archive keeps it: who played, how it ended, where it started and the moves
+	// moves are packed like a MoveList without the flags (from | to << 6 | promotion type << 17)
+
+	private final String gameId;
+	private final String whitePlayer;
+	private final String blackPlayer;
+	private final String startFen; // null for the usual start
+	private final GameState.Status status;
+	private final long finishedAt;
+	private final int[] moves;
+
+	public ArchivedGame(String gameId, String whitePlayer, String blackPlayer, String startFen, GameState.Status status, long finishedAt,
+			int[] moves) {
+		this.gameId = gameId;
+		this.whitePlayer = whitePlayer;
+		this.blackPlayer = blackPlayer;
+		this.startFen = startFen;
+		this.status = status;
+		this.finishedAt = finishedAt;
+		this.moves = moves;
+	}
+
+	public static ArchivedGame of(GameState game, long finishedAt) {
+		// call with the game's lock held, or once nothing can move in it any more
+		return new ArchivedGame(game.getGameId(), game.getWhitePlayer(), game.getBlackPlayer(), game.getStartFen(), game.getStatus(),
+				finishedAt, game.getHistory().toArray());
+	}
+
+	public String getGameId() {
+		return gameId;
+	}
+
+	public String getWhitePlayer() {
+		return whitePlayer;
+	}
+
+	public String getBlackPlayer() {
+		return blackPlayer;
+	}
+
+	public String getStartFen() {
+		return startFen;
+	}
+
+	public GameState.Status getStatus() {
+		return status;
+	}
+
+	public long getFinishedAt() {
+		return finishedAt;
+	}
+
+	public int[] getMoves() {
+		return moves;
+	}
+
+	public String getResult() {
+		// PGN result, whoever was left to move when it was mate lost
+		// the side field is the only place a FEN has " b "
+		boolean blackStarted = startFen != null && startFen.contains(" b ");
+		if (status == GameState.Status.CHECKMATE) return (moves.length % 2 == 0) != blackStarted ? "0-1" : "1-0";
+		return switch (status) {
+			case STALEMATE, DRAW_REPETITION, DRAW_FIFTY_MOVES, DRAW_INSUFFICIENT_MATERIAL -> "1/2-1/2";
+			default -> "*";
+		};
+	}
+}
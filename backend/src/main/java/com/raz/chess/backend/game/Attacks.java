@@ -0,0 +1,163 @@
+package com.raz.chess.backend.lobby;
+
+import java.util.Arrays;
+
+import static com.raz.chess.backend.lobby.Position.*;
+
+public final class Attacks {
+	// ray directions, the first four step towards higher square indices and the last four towards lower ones
+	static final int SOUTH = 0, EAST = 1, SOUTH_EAST = 2, SOUTH_WEST = 3;
+	static final int NORTH = 4, WEST = 5, NORTH_WEST = 6, NORTH_EAST = 7;
+	private static final int[] ROW_STEP = {1, 0, 1, 1, -1, 0, -1, -1};
+	private static final int[] COL_STEP = {0, 1, 1, -1, 0, -1, -1, 1};
+
+	// squares per square, in order: knight and king neighbours, and each ray from nearest to the edge
+	static final int[][] KNIGHT_SQUARES = new int[64][];
+	static final int[][] KING_SQUARES = new int[64][];
+	static final int[][][] RAY_SQUARES = new int[8][64][];
+
+	// attack sets per square, built once when the class loads
+	static final long[] KNIGHT_ATTACKS = new long[64];
+	static final long[] KING_ATTACKS = new long[64];
+	static final long[][] PAWN_ATTACKS = new long[2][64]; // squares a pawn of that colour attacks from the square
+	static final long[][] RAYS = new long[8][64]; // every square in a direction up to the edge
+
+	// per pair of squares: the squares strictly between them, and the whole line through both (edge to edge)
+	// both are empty when the squares don't share a rank, file or diagonal
+	static final long[][] BETWEEN = new long[64][64];
+	static final long[][] LINE = new long[64][64];
+
+	static {
+		int[][] knightSteps = {{-2,-1},{-2,1},{-1,-2},{-1,2},{1,-2},{1,2},{2,-1},{2,1}};
+		int[][] kingSteps = new int[8][];
+		for (int dir = 0; dir < 8; dir++) {
+			kingSteps[dir] = new int[]{ROW_STEP[dir], COL_STEP[dir]};
+		}
+
+		for (int sq = 0; sq < 64; sq++) {
+			int row = rowOf(sq), col = colOf(sq);
+
+			KNIGHT_SQUARES[sq] = squaresOf(row, col, knightSteps);
+			KING_SQUARES[sq] = squaresOf(row, col, kingSteps);
+
+			for (int dir = 0; dir < 8; dir++) {
+				int length = 0;
+				int[] ray = new int[7];
+				for (int r = row + ROW_STEP[dir], c = col + COL_STEP[dir]; r >= 0 && r < 8 && c >= 0 && c < 8; r += ROW_STEP[dir], c += COL_STEP[dir]) {
+					ray[length++] = square(r, c);
+				}
+				RAY_SQUARES[dir][sq] = Arrays.copyOf(ray, length);
+			}
+
+			// white pawns head up the board (towards row 0), black pawns down
+			PAWN_ATTACKS[WHITE][sq] = maskOf(row - 1, col - 1) | maskOf(row - 1, col + 1);
+			PAWN_ATTACKS[BLACK][sq] = maskOf(row + 1, col - 1) | maskOf(row + 1, col + 1);
+		}
+
+		// masks come from the lists, so the bounds checks above are the only ones
+		for (int sq = 0; sq < 64; sq++) {
+			for (int s : KNIGHT_SQUARES[sq]) KNIGHT_ATTACKS[sq] |= bit(s);
+			for (int s : KING_SQUARES[sq]) KING_ATTACKS[sq] |= bit(s);
+
+			for (int dir = 0; dir < 8; dir++) {
+				long between = 0;
+				for (int s : RAY_SQUARES[dir][sq]) {
+					RAYS[dir][sq] |= bit(s);
+					BETWEEN[sq][s] = between;
+					between |= bit(s);
+				}
+			}
+		}
+		for (int sq = 0; sq < 64; sq++) {
+			for (int dir = 0; dir < 8; dir++) {
+				// opposite direction is dir ^ 4
+				long line = RAYS[dir][sq] | RAYS[dir ^ 4][sq] | bit(sq);
+				for (int s : RAY_SQUARES[dir][sq]) LINE[sq][s] = line;
+			}
+		}
+	}
+
+	private Attacks() {
+	}
+
+	private static long maskOf(int row, int col) {
+		return (row >= 0 && row < 8 && col >= 0 && col < 8) ? bit(square(row, col)) : 0L;
+	}
+
+	private static int[] squaresOf(int row, int col, int[][] steps) {
+		int length = 0;
+		int[] squares = new int[steps.length];
+		for (int[] d : steps) {
+			int r = row + d[0], c = col + d[1];
+			if (r >= 0 && r < 8 && c >= 0 && c < 8) squares[length++] = square(r, c);
+		}
+		return Arrays.copyOf(squares, length);
+	}
+
+	// -- GEOMETRY -- //
+	public static long between(int a, int b) {
+		return BETWEEN[a][b];
+	}
+
+	public static long line(int a, int b) {
+		return LINE[a][b];
+	}
+
+	// -- SLIDERS -- //
+	static long ray(int dir, int sq, long occupied) {
+		// the ray stops at (and includes) the first blocker in that direction
+		long ray = RAYS[dir][sq];
+		long blockers = ray & occupied;
+		if (blockers == 0) return ray;
+		int first = dir < 4 ? Long.numberOfTrailingZeros(blockers) : 63 - Long.numberOfLeadingZeros(blockers);
+		return ray ^ RAYS[dir][first];
+	}
+
+	public static long rookAttacks(int sq, long occupied) {
+		return ray(SOUTH, sq, occupied) | ray(EAST, sq, occupied)
+				| ray(NORTH, sq, occupied) | ray(WEST, sq, occupied);
+	}
+
+	public static long bishopAttacks(int sq, long occupied) {
+		return ray(SOUTH_EAST, sq, occupied) | ray(SOUTH_WEST, sq, occupied)
+				| ray(NORTH_WEST, sq, occupied) | ray(NORTH_EAST, sq, occupied);
+	}
+
+	public static long attacksOf(int piece, int sq, long occupied) {
+		switch (typeOf(piece)) {
+			case PAWN: return PAWN_ATTACKS[colourOf(piece)][sq];
+			case KNIGHT: return KNIGHT_ATTACKS[sq];
+			case BISHOP: return bishopAttacks(sq, occupied);
+			case ROOK: return rookAttacks(sq, occupied);
+			case QUEEN: return bishopAttacks(sq, occupied) | rookAttacks(sq, occupied);
+			default: return KING_ATTACKS[sq];
+		}
+	}
+
+	// -- REVERSE LOOKUP -- //
+	public static long attackersOf(Position pos, int sq, int attackerColour, long occupied) {
+		// look outwards from the target square: a knight on sq would hit every knight that attacks it, and so on
+		long attackers = KNIGHT_ATTACKS[sq] & pos.pieces(attackerColour, KNIGHT);
+		attackers |= KING_ATTACKS[sq] & pos.pieces(attackerColour, KING);
+		attackers |= PAWN_ATTACKS[attackerColour ^ 1][sq] & pos.pieces(attackerColour, PAWN);
+
+		long queens = pos.pieces(attackerColour, QUEEN);
+		attackers |= bishopAttacks(sq, occupied) & (pos.pieces(attackerColour, BISHOP) | queens);
+		attackers |= rookAttacks(sq, occupied) & (pos.pieces(attackerColour, ROOK) | queens);
+		return attackers;
+	}
+
+	public static boolean isSquareAttacked(Position pos, int sq, int attackerColour) {
+		// cheap lookups first, rays only if those miss
+		if ((KNIGHT_ATTACKS[sq] & pos.pieces(attackerColour, KNIGHT)) != 0) return true;
+		if ((PAWN_ATTACKS[attackerColour ^ 1][sq] & pos.pieces(attackerColour, PAWN)) != 0) return true;
+		if ((KING_ATTACKS[sq] & pos.pieces(attackerColour, KING)) != 0) return true;
+
+		long occupied = pos.occupied();
+		long queens = pos.pieces(attackerColour, QUEEN);
+		long diagonal = pos.pieces(attackerColour, BISHOP) | queens;
+		if (diagonal != 0 && (bishopAttacks(sq, occupied) & diagonal) != 0) return true;
+		long straight = pos.pieces(attackerColour, ROOK) | queens;
+		return straight != 0 && (rookAttacks(sq, occupied) & straight) != 0;
+	}
+}
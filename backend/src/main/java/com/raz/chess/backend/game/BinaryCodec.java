@@ -0,0 +1,234 @@
+package com.raz.chess.backend.lobby;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import static com.raz.chess.backend.lobby.Position.*;
+
+public final class BinaryCodec {
+	// compact big endian wire format for clients that negotiate it instead of JSON
+	//
+	// move (client -> server): int packed move, UTF gameId, UTF player
+	// delta (server -> client): int seq, int packed move with flags, byte present, then only the present fields
+	// snapshot (server -> client): int seq, six header bytes, 32 bytes of board nibbles, one id suffix byte
+	//   per occupied square, then the UTF strings
+	//
+	// packed move: from | to << 6 | promotion type << 12 | flags << 15, squares are row * 8 + col
+	// board nibble: piece code + 1 (0 is empty), square sq lives in byte sq / 2, low nibble first
+	// id suffix: what follows colour and type in the id, 0x80 for a promoted pawn's "p" and the low nibble for the number
+
+	public static final int CAPTURE = 1, EN_PASSANT = 2, CASTLING = 4;
+	private static final int STATUS = 1, CASTLING_RIGHTS = 2, EN_PASSANT_SQUARE = 4, MYSTERY_BOX = 8;
+	private static final int WHITE_POWER_UP = 16, BLACK_POWER_UP = 32;
+	private static final int NONE = 0xFF;
+	private static final String TYPES = "pnbrqk";
+	private static final GameState.Status[] STATUSES = GameState.Status.values();
+
+	private BinaryCodec() {
+	}
+
+	// -- MOVES -- //
+	public static byte[] encodeMove(Move move) {
+		return write(out -> {
+			int from = square(move.getFromRow(), move.getFromCol());
+			int to = square(move.getToRow(), move.getToCol());
+			int promotion = move.getPromotion() == null || move.getPromotion().isEmpty()
+					? 0 : Math.max(0, TYPES.indexOf(Character.toLowerCase(move.getPromotion().charAt(0))));
+			out.writeInt(from | to << 6 | promotion << 12);
+			out.writeUTF(nullToEmpty(move.getGameId()));
+			out.writeUTF(nullToEmpty(move.getPlayer()));
+		});
+	}
+
+	public static Move decodeMove(byte[] bytes) {
+		return read(bytes, in -> {
+			int packed = in.readInt();
+			int from = packed & 63;
+			int to = (packed >>> 6) & 63;
+			int promotion = (packed >>> 12) & 7;
+
+			Move move = new Move(rowOf(from), colOf(from), rowOf(to), colOf(to), null);
+			if (promotion != 0) {
+				move.setPromotion(TYPES.substring(promotion, promotion + 1));
+			}
+			move.setGameId(emptyToNull(in.readUTF()));
+			move.setPlayer(emptyToNull(in.readUTF()));
+			return move;
+		});
+	}
+
+	// -- DELTAS -- //
+	public static byte[] encodeDelta(MoveDelta delta) {
+		return write(out -> {
+			int from = square(delta.getFromRow(), delta.getFromCol());
+			int to = square(delta.getToRow(), delta.getToCol());
+
+			// captured and promoted ids aren't sent, the client can work them out from its own board
+			int flags = 0;
+			if (delta.getCaptured() != null) flags |= CAPTURE;
+			if (delta.getCapturedRow() != null) flags |= EN_PASSANT;
+			if (delta.getRookFromCol() != null) flags |= CASTLING;
+			int promotion = delta.getPromotion() == null ? 0 : TYPES.indexOf(delta.getPromotion().charAt(1));
+
+			int present = 0;
+			if (delta.getStatus() != null) present |= STATUS;
+			if (delta.getCastling() != null) present |= CASTLING_RIGHTS;
+			if (delta.getEnPassantRow() != null) present |= EN_PASSANT_SQUARE;
+			if (delta.getMysteryBoxRow() != null) present |= MYSTERY_BOX;
+			if (delta.getWhitePlayerPowerUp() != null) present |= WHITE_POWER_UP;
+			if (delta.getBlackPlayerPowerUp() != null) present |= BLACK_POWER_UP;
+
+			out.writeInt((int) delta.getSeq());
+			out.writeInt(from | to << 6 | promotion << 12 | flags << 15);
+			out.writeByte(present);
+			if ((present & STATUS) != 0) out.writeByte(delta.getStatus().ordinal());
+			if ((present & CASTLING_RIGHTS) != 0) out.writeByte(delta.getCastling());
+			if ((present & EN_PASSANT_SQUARE) != 0) out.writeByte(squareOrNone(delta.getEnPassantRow(), delta.getEnPassantCol()));
+			if ((present & MYSTERY_BOX) != 0) out.writeByte(squareOrNone(delta.getMysteryBoxRow(), delta.getMysteryBoxCol()));
+			if ((present & WHITE_POWER_UP) != 0) out.writeUTF(delta.getWhitePlayerPowerUp());
+			if ((present & BLACK_POWER_UP) != 0) out.writeUTF(delta.getBlackPlayerPowerUp());
+		});
+	}
+
+	// -- SNAPSHOTS -- //
+	public static byte[] encodeState(GameState game) {
+		return write(out -> {
+			Board board = game.getBoard();
+			out.writeInt((int) game.getSequence());
+			out.writeByte("BLACK".equals(game.getTurn()) ? BLACK : WHITE);
+			out.writeByte(game.getStatus() == null ? NONE : game.getStatus().ordinal());
+			out.writeByte(castlingRightsOf(game));
+			out.writeByte(squareOrNone(game.getEnPassantRow(), game.getEnPassantCol()));
+			out.writeByte(squareOrNone(game.getMysteryBoxRow(), game.getMysteryBoxCol()));
+			out.writeByte(Math.max(0, Math.min(127, game.getMovesUntilMysteryBox())));
+
+			// 64 nibbles, two squares a byte
+			byte[] nibbles = new byte[32];
+			for (int sq = 0; sq < 64; sq++) {
+				String id = board.get(rowOf(sq), colOf(sq));
+				if (id == null) continue;
+				nibbles[sq >> 1] |= (byte) ((pieceOf(id) + 1) << ((sq & 1) << 2));
+			}
+			out.write(nibbles);
+
+			for (int sq = 0; sq < 64; sq++) {
+				String id = board.get(rowOf(sq), colOf(sq));
+				if (id != null) out.writeByte(suffixOf(id));
+			}
+
+			out.writeUTF(nullToEmpty(game.getGameId()));
+			out.writeUTF(nullToEmpty(game.getWhitePlayer()));
+			out.writeUTF(nullToEmpty(game.getBlackPlayer()));
+			out.writeUTF(nullToEmpty(game.getWhitePlayerPowerUp()));
+			out.writeUTF(nullToEmpty(game.getBlackPlayerPowerUp()));
+		});
+	}
+
+	public static GameState decodeState(byte[] bytes) {
+		return read(bytes, in -> {
+			GameState game = new GameState();
+			game.setSequence(in.readInt() & 0xFFFFFFFFL);
+			game.setTurn(in.readUnsignedByte() == BLACK ? "BLACK" : "WHITE");
+			int status = in.readUnsignedByte();
+			game.setStatus(status == NONE ? null : STATUSES[status]);
+
+			int rights = in.readUnsignedByte();
+			game.setWhiteKingSideCastle((rights & WHITE_KING_SIDE) != 0);
+			game.setWhiteQueenSideCastle((rights & WHITE_QUEEN_SIDE) != 0);
+			game.setBlackKingSideCastle((rights & BLACK_KING_SIDE) != 0);
+			game.setBlackQueenSideCastle((rights & BLACK_QUEEN_SIDE) != 0);
+
+			int enPassant = in.readUnsignedByte();
+			game.setEnPassantRow(enPassant == NONE ? -1 : rowOf(enPassant));
+			game.setEnPassantCol(enPassant == NONE ? -1 : colOf(enPassant));
+			int box = in.readUnsignedByte();
+			game.setMysteryBoxRow(box == NONE ? -1 : rowOf(box));
+			game.setMysteryBoxCol(box == NONE ? -1 : colOf(box));
+			game.setMovesUntilMysteryBox(in.readUnsignedByte());
+
+			byte[] nibbles = new byte[32];
+			in.readFully(nibbles);
+			Board board = Board.empty();
+			for (int sq = 0; sq < 64; sq++) {
+				int code = ((nibbles[sq >> 1] >> ((sq & 1) << 2)) & 15) - 1;
+				if (code < 0) continue;
+				board.set(rowOf(sq), colOf(sq), idOf(code, in.readUnsignedByte()));
+			}
+			game.setBoard(board);
+
+			game.setGameId(emptyToNull(in.readUTF()));
+			game.setWhitePlayer(emptyToNull(in.readUTF()));
+			game.setBlackPlayer(emptyToNull(in.readUTF()));
+			game.setWhitePlayerPowerUp(emptyToNull(in.readUTF()));
+			game.setBlackPlayerPowerUp(emptyToNull(in.readUTF()));
+			return game;
+		});
+	}
+
+	// -- HELPERS -- //
+	private static int suffixOf(String id) {
+		// "wp5" -> 5, "wqp5" -> 0x85, "wk" -> 0
+		int i = 2;
+		int suffix = 0;
+		if (i < id.length() && id.charAt(i) == 'p') {
+			suffix = 0x80;
+			i++;
+		}
+		if (i < id.length()) {
+			int number = Integer.parseInt(id.substring(i));
+			if (number > 15) throw new IllegalArgumentException("piece id out of range for the binary format: " + id);
+			suffix |= number;
+		}
+		return suffix;
+	}
+
+	private static String idOf(int piece, int suffix) {
+		StringBuilder id = new StringBuilder(4);
+		id.append(colourOf(piece) == WHITE ? 'w' : 'b').append(TYPES.charAt(typeOf(piece)));
+		if ((suffix & 0x80) != 0) id.append('p');
+		if ((suffix & 15) != 0) id.append(suffix & 15);
+		return id.toString();
+	}
+
+	private static int squareOrNone(Integer row, Integer col) {
+		return row == null || col == null || row < 0 || col < 0 ? NONE : square(row, col);
+	}
+
+	private static String nullToEmpty(String s) {
+		return s == null ? "" : s;
+	}
+
+	private static String emptyToNull(String s) {
+		return s.isEmpty() ? null : s;
+	}
+
+	private interface Writer {
+		void write(DataOutputStream out) throws IOException;
+	}
+
+	private interface Reader<T> {
+		T read(DataInputStream in) throws IOException;
+	}
+
+	private static byte[] write(Writer writer) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			writer.write(out);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static <T> T read(byte[] bytes, Reader<T> reader) {
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+			return reader.read(in);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}
@@ -0,0 +1,86 @@
+package com.raz.chess.backend.lobby;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+
+@Component
+public class BinarySubscriptions implements ChannelInterceptor {
+	// clients ask for the binary format with a "chess-format: binary" header on CONNECT
+	// it's only honoured on the plain websocket endpoint, SockJS frames are text and would mangle the bytes
+	// a binary client's /topic/game/{gameId} subscription is moved to /topic/game/{gameId}/bin, everyone else stays on JSON
+	public static final String FORMAT_HEADER = "chess-format";
+	public static final String RAW_TRANSPORT = "chess.rawTransport"; // session attribute set by the handshake
+	private static final String BINARY = "chess.binary";
+	private static final String GAME_TOPIC = "/topic/game/";
+	public static final String BINARY_SUFFIX = "/bin";
+
+	// sessionId -> (subscriptionId -> gameId), so unsubscribes and disconnects can be counted off
+	private final Map<String, Map<String, String>> subscriptions = new ConcurrentHashMap<>();
+	// gameId -> binary subscribers, so games nobody watches in binary are never encoded twice
+	private final Map<String, Integer> subscribers = new ConcurrentHashMap<>();
+
+	@Override
+	public Message<?> preSend(Message<?> message, MessageChannel channel) {
+		StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+		if (accessor == null || accessor.getCommand() == null) return message;
+
+		switch (accessor.getCommand()) {
+			case CONNECT:
+				Map<String, Object> attributes = accessor.getSessionAttributes();
+				if (attributes != null && attributes.containsKey(RAW_TRANSPORT)
+						&& "binary".equalsIgnoreCase(accessor.getFirstNativeHeader(FORMAT_HEADER))) {
+					attributes.put(BINARY, Boolean.TRUE);
+				}
+				break;
+			case SUBSCRIBE:
+				String destination = accessor.getDestination();
+				if (isBinary(accessor) && destination != null && destination.startsWith(GAME_TOPIC)
+						&& destination.indexOf('/', GAME_TOPIC.length()) < 0) {
+					String gameId = destination.substring(GAME_TOPIC.length());
+					accessor.setDestination(destination + BINARY_SUFFIX);
+					subscriptions.computeIfAbsent(accessor.getSessionId(), k -> new ConcurrentHashMap<>())
+							.put(accessor.getSubscriptionId(), gameId);
+					subscribers.merge(gameId, 1, Integer::sum);
+				}
+				break;
+			case UNSUBSCRIBE:
+				Map<String, String> session = subscriptions.get(accessor.getSessionId());
+				if (session != null) {
+					release(session.remove(accessor.getSubscriptionId()));
+				}
+				break;
+			case DISCONNECT:
+				// can arrive twice (client frame then socket close), the second finds nothing
+				Map<String, String> closed = subscriptions.remove(accessor.getSessionId());
+				if (closed != null) {
+					closed.values().forEach(this::release);
+				}
+				break;
+			default:
+				break;
+		}
+		return message;
+	}
+
+	public boolean hasSubscribers(String gameId) {
+		return subscribers.containsKey(gameId);
+	}
+
+	public static boolean isBinary(SimpMessageHeaderAccessor accessor) {
+		Map<String, Object> attributes = accessor.getSessionAttributes();
+		return attributes != null && attributes.containsKey(BINARY);
+	}
+
+	private void release(String gameId) {
+		if (gameId == null) return;
+		subscribers.computeIfPresent(gameId, (k, count) -> count > 1 ? count - 1 : null);
+	}
+}
@@ -25,16 +25,21 @@ public class Board {
 		grid[toRow][toCol] = piece;
 	}
 	
+	public static Board empty() {
+		// board with no pieces, filled in by the caller
+		return new Board(true);
+	}
+	
 	public Board copy() {
 		// create a copy of the board for move simulation
-		Board b = new Board(false);
+		Board b = new Board(true);
 		for (int i = 0; i < 8; i++) {
 			System.arraycopy(this.grid[i], 0, b.grid[i], 0, 8);
 		}
 		return b;
 	}
 	
-	// private constructor used by copy()
+	// private constructor used by copy() and empty()
 	private Board(boolean skipInit) {
 		if (!skipInit) {
 			initialise();
@@ -0,0 +1,189 @@
+package com.raz.chess.backend.lobby;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+@Service
+public class BotService {
+	// the computer opponent. it thinks on its own small pool so a search never holds up the STOMP inbound threads
+	public static final String BOT_NAME = "Computer";
+
+	private static final long THINK_MILLIS = 300;
+	private static final String PROMOTIONS = "pnbrqk"; // by Position piece type
+
+	private final GameService gameService;
+	private final GameBroadcaster broadcaster;
+
+	// gameId -> the bot's name in that game
+	private final Map<String, String> games = new ConcurrentHashMap<>();
+	// one table and one thread budget for every bot game, neither grows with the number of games
+	private final ParallelSearch search;
+	private final int threadsPerMove;
+	private final ThreadPoolExecutor workers;
+	// one ply answers for when every worker is busy, on a thread of their own so they never run on the caller's
+	private final ExecutorService fallback;
+	private final Search fallbackSearch; // only used on the fallback thread
+	private final OpeningBook book; // null if there isn't one
+
+	public BotService(GameService gameService, GameBroadcaster broadcaster,
+			@Value("${chess.bot.hash-mb:64}") int hashMegabytes,
+			@Value("${chess.bot.hash-replacement:DEPTH_AND_AGE}") TranspositionTable.Replacement replacement,
+			@Value("${chess.bot.threads:0}") int totalThreads,
+			@Value("${chess.bot.threads-per-move:4}") int threadsPerMove,
+			@Value("${chess.bot.book:}") String bookPath) {
+		this.gameService = gameService;
+		this.broadcaster = broadcaster;
+		this.book = loadBook(bookPath);
+
+		// searches are cpu bound, 0 means one thread per core
+		int threads = totalThreads > 0 ? totalThreads : Runtime.getRuntime().availableProcessors();
+		this.search = new ParallelSearch(new TranspositionTable(hashMegabytes, replacement), threads);
+		this.threadsPerMove = Math.max(1, Math.min(threadsPerMove, threads));
+
+		// one worker per game thinking at once, each then borrows helpers from the shared budget if there are any spare
+		AtomicInteger count = new AtomicInteger();
+		this.workers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(64), r -> {
+			Thread t = new Thread(r, "bot-" + count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+
+		this.fallback = Executors.newSingleThreadExecutor(r -> {
+			Thread t = new Thread(r, "bot-fallback");
+			t.setDaemon(true);
+			return t;
+		});
+		this.fallbackSearch = new Search(search.getTable());
+
+		// games recovered from the journal that had the bot in them carry on where they stopped
+		for (GameState game : gameService.getGames()) {
+			if (BOT_NAME.equals(game.getWhitePlayer()) || BOT_NAME.equals(game.getBlackPlayer())) adopt(game, BOT_NAME);
+		}
+	}
+
+	public void adopt(GameState game, String botName) {
+		// the bot plays botName's side of this game from now on, and moves straight away if it's that side's turn
+		games.put(game.getGameId(), botName);
+		onMove(game.getGameId());
+	}
+
+	public static boolean isReserved(String name) {
+		// nobody else goes by the bot's name, or in any case of it. a recovered game is given back to the bot
+		// by name alone, so a player called Computer would find the bot playing for them after a restart
+		return name != null && name.trim().equalsIgnoreCase(BOT_NAME);
+	}
+
+	public boolean isBotGame(String gameId) {
+		return gameId != null && games.containsKey(gameId);
+	}
+
+	public void onMove(String gameId) {
+		// called after every move, starts thinking if it's now the bot's turn
+		String botName = gameId == null ? null : games.get(gameId);
+		if (botName == null) return;
+
+		GameState game = gameService.getGame(gameId);
+		if (game == null) {
+			games.remove(gameId);
+			return;
+		}
+
+		Position pos;
+		long[] repetitionKeys;
+		int halfmoveClock;
+		synchronized (game) {
+			if (game.getStatus() != GameState.Status.IN_PROGRESS) {
+				games.remove(gameId);
+				return;
+			}
+			String toMove = game.getTurn().equals("WHITE") ? game.getWhitePlayer() : game.getBlackPlayer();
+			if (!botName.equals(toMove)) return;
+			pos = Position.fromGameState(game);
+			repetitionKeys = game.getRepetitions().toArray();
+			halfmoveClock = game.getHalfmoveClock();
+		}
+
+		// known openings are answered on the spot, a lookup is a binary search over the mapped book
+		int bookMove = book == null ? 0 : book.pick(pos);
+		if (bookMove != 0) {
+			play(gameId, botName, bookMove, "from the book");
+			return;
+		}
+
+		try {
+			workers.execute(() -> think(gameId, botName, pos, repetitionKeys, halfmoveClock, THINK_MILLIS));
+		} catch (RejectedExecutionException e) {
+			// every worker busy and the queue full, a one ply answer costs next to nothing so give that instead
+			// it's one thread whatever the load, and the caller (the STOMP inbound thread) is never held up
+			fallback.execute(() -> think(gameId, botName, pos, repetitionKeys, halfmoveClock, 0));
+		}
+	}
+
+	private void think(String gameId, String botName, Position pos, long[] repetitionKeys, int halfmoveClock, long thinkMillis) {
+		// the game's positions so far go in too, so the search knows which moves would repeat one
+		Search.Result result = thinkMillis == 0
+				? fallbackSearch.search(pos, 0, 1, 1, new AtomicBoolean(), repetitionKeys, halfmoveClock)
+				: search.search(pos, thinkMillis, threadsPerMove, repetitionKeys, halfmoveClock);
+		if (result.getMove() == 0) return;
+		play(gameId, botName, result.getMove(),
+				"(depth " + result.getDepth() + ", score " + result.getScore() + ", " + result.getNodes() + " nodes)");
+	}
+
+	private void play(String gameId, String botName, int packed, String how) {
+		int from = MoveList.from(packed);
+		int to = MoveList.to(packed);
+		Move move = new Move(Position.rowOf(from), Position.colOf(from), Position.rowOf(to), Position.colOf(to), botName);
+		move.setGameId(gameId);
+		if (MoveList.is(packed, MoveList.PROMOTION)) {
+			move.setPromotion(String.valueOf(PROMOTIONS.charAt(MoveList.promotion(packed))));
+		}
+		System.out.println("Bot played " + Fen.moveName(packed) + " in " + gameId + " " + how);
+
+		// the game may have moved on while we were thinking (mystery box, the other player left), then this is just refused
+		MoveDelta delta = gameService.applyMove(move);
+		if (delta == null) return;
+		broadcaster.publishMove(delta);
+		if (delta.getStatus() != null && delta.getStatus() != GameState.Status.IN_PROGRESS) {
+			games.remove(gameId);
+			return;
+		}
+		// with the bot on both sides nobody else is going to ask for the reply
+		onMove(gameId);
+	}
+
+	private static OpeningBook loadBook(String path) {
+		// a book file from chess.bot.book, or else the bundled opening lines built once into the temp directory
+		// the built file is named after its lines, so every server on the host maps the same one
+		try {
+			if (!path.isBlank()) return OpeningBook.open(Path.of(path));
+
+			try (InputStream in = BotService.class.getResourceAsStream("/openings.txt")) {
+				if (in == null) return null;
+				List<String> lines = new String(in.readAllBytes(), StandardCharsets.UTF_8).lines().toList();
+				Path file = Path.of(System.getProperty("java.io.tmpdir"), "chess-openings-" + Integer.toHexString(lines.hashCode()) + ".bin");
+				if (!Files.exists(file)) OpeningBook.build(lines, file);
+				return OpeningBook.open(file);
+			}
+		} catch (IOException | IllegalArgumentException e) {
+			System.out.println("Bot has no opening book: " + e.getMessage());
+			return null;
+		}
+	}
+}
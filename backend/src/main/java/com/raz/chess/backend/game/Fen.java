@@ -0,0 +1,320 @@
+package com.raz.chess.backend.lobby;
+
+import java.util.Arrays;
+
+import static com.raz.chess.backend.lobby.Position.*;
+
+public final class Fen {
+	// Forsyth-Edwards Notation, rank 8 first which is row 0 on our board
+	// read in one pass over the string, no splitting, into a Position for the engine or a GameState to play from
+	// pieces get the same ids the starting Board uses: pawns are numbered by file (the e pawn is wp5) unless
+	// two share a file, everything else in the order it's read, and the king and first queen go without a number
+	public static final String START = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+	private static final String TYPES = "pnbrqk";
+
+	private Fen() {
+	}
+
+	public static Position toPosition(String fen) {
+		Parser parsed = new Parser(fen);
+		Position pos = new Position();
+		String[] ids = parsed.ids();
+		for (int sq = 0; sq < 64; sq++) {
+			if (parsed.mailbox[sq] != EMPTY) pos.put(sq, parsed.mailbox[sq], ids[sq]);
+		}
+		pos.setSideToMove(parsed.side);
+		pos.setCastling(parsed.castling);
+		pos.setEnPassant(parsed.enPassant);
+		return pos;
+	}
+
+	public static GameState toGameState(String fen) {
+		// a game ready to play from the position, players and id are the caller's to fill in
+		Parser parsed = new Parser(fen);
+		Board board = Board.empty();
+		String[] ids = parsed.ids();
+		for (int sq = 0; sq < 64; sq++) {
+			if (ids[sq] != null) board.set(rowOf(sq), colOf(sq), ids[sq]);
+		}
+
+		GameState game = new GameState(null, null, GameState.Status.IN_PROGRESS, parsed.side == WHITE ? "WHITE" : "BLACK", board);
+		game.setWhiteKingSideCastle((parsed.castling & WHITE_KING_SIDE) != 0);
+		game.setWhiteQueenSideCastle((parsed.castling & WHITE_QUEEN_SIDE) != 0);
+		game.setBlackKingSideCastle((parsed.castling & BLACK_KING_SIDE) != 0);
+		game.setBlackQueenSideCastle((parsed.castling & BLACK_QUEEN_SIDE) != 0);
+		game.setEnPassantRow(parsed.enPassant < 0 ? -1 : rowOf(parsed.enPassant));
+		game.setEnPassantCol(parsed.enPassant < 0 ? -1 : colOf(parsed.enPassant));
+		game.setHalfmoveClock(parsed.halfmoveClock);
+		game.setStartFen(fen.trim());
+		return game;
+	}
+
+	public static int halfmoveClockOf(String fen) {
+		return new Parser(fen).halfmoveClock;
+	}
+
+	public static int fullmoveNumberOf(String fen) {
+		return new Parser(fen).fullmoveNumber;
+	}
+
+	private static final class Parser {
+		final int[] mailbox = new int[64];
+		final int[] kings = {-1, -1};
+		long occupied;
+		int side, castling, enPassant = -1, halfmoveClock, fullmoveNumber = 1;
+
+		private final String fen;
+		private int at;
+
+		Parser(String fen) {
+			if (fen == null) throw new IllegalArgumentException("no FEN given");
+			this.fen = fen;
+			placement();
+			sideToMove();
+			if (inCheck(side ^ 1)) throw error("the side that just moved is in check");
+			castling();
+			enPassant();
+			// the clocks are optional, plenty of FENs stop after en passant
+			if (skipSpaces()) halfmoveClock = number();
+			if (skipSpaces()) fullmoveNumber = Math.max(1, number());
+			if (skipSpaces()) throw error("trailing text");
+		}
+
+		private void placement() {
+			Arrays.fill(mailbox, EMPTY);
+			skipSpaces();
+			int row = 0, col = 0;
+			for (; at < fen.length() && fen.charAt(at) != ' '; at++) {
+				char ch = fen.charAt(at);
+				if (ch == '/') {
+					if (col != 8 || ++row > 7) throw error("every rank needs 8 squares");
+					col = 0;
+				} else if (ch >= '1' && ch <= '8') {
+					col += ch - '0';
+					if (col > 8) throw error("rank " + (8 - row) + " is too long");
+				} else {
+					int type = TYPES.indexOf(Character.toLowerCase(ch));
+					if (type < 0) throw error("unknown piece " + ch);
+					if (col > 7) throw error("rank " + (8 - row) + " is too long");
+					if (type == PAWN && (row == 0 || row == 7)) throw error("pawn on the back rank");
+					int colour = Character.isUpperCase(ch) ? WHITE : BLACK;
+					int sq = square(row, col++);
+					if (type == KING && kings[colour] >= 0) throw error("needs one king a side");
+					if (type == KING) kings[colour] = sq;
+					mailbox[sq] = piece(colour, type);
+					occupied |= bit(sq);
+				}
+			}
+			if (row != 7 || col != 8) throw error("needs 8 ranks of 8 squares");
+			if (kings[WHITE] < 0 || kings[BLACK] < 0) throw error("needs one king a side");
+			material(WHITE);
+			material(BLACK);
+		}
+
+		private void material(int colour) {
+			// no more than a side could have after promoting: every queen past the first, and every rook, bishop or
+			// knight past the second, used up one of its 8 pawns. that also keeps piece numbers within 10
+			int[] counts = new int[6];
+			int total = 0;
+			for (int sq = 0; sq < 64; sq++) {
+				if (mailbox[sq] != EMPTY && colourOf(mailbox[sq]) == colour) {
+					counts[typeOf(mailbox[sq])]++;
+					total++;
+				}
+			}
+			String name = colour == WHITE ? "white" : "black";
+			if (total > 16) throw error(name + " has more than 16 pieces");
+			int promoted = Math.max(0, counts[QUEEN] - 1) + Math.max(0, counts[ROOK] - 2) + Math.max(0, counts[BISHOP] - 2)
+					+ Math.max(0, counts[KNIGHT] - 2);
+			if (counts[PAWN] + promoted > 8) throw error(name + " has more pieces than 8 pawns could have promoted to");
+		}
+
+		private void sideToMove() {
+			if (!skipSpaces()) throw error("no side to move");
+			char ch = fen.charAt(at++);
+			if (ch != 'w' && ch != 'b') throw error("side to move must be w or b");
+			side = ch == 'w' ? WHITE : BLACK;
+		}
+
+		private void castling() {
+			if (!skipSpaces()) throw error("no castling rights");
+			for (; at < fen.length() && fen.charAt(at) != ' '; at++) {
+				switch (fen.charAt(at)) {
+					case 'K' -> castling |= WHITE_KING_SIDE;
+					case 'Q' -> castling |= WHITE_QUEEN_SIDE;
+					case 'k' -> castling |= BLACK_KING_SIDE;
+					case 'q' -> castling |= BLACK_QUEEN_SIDE;
+					case '-' -> { }
+					default -> throw error("bad castling rights");
+				}
+			}
+			// a right only means something while its king and rook are still at home
+			if (mailbox[square(7, 4)] != piece(WHITE, KING)) castling &= ~(WHITE_KING_SIDE | WHITE_QUEEN_SIDE);
+			if (mailbox[square(0, 4)] != piece(BLACK, KING)) castling &= ~(BLACK_KING_SIDE | BLACK_QUEEN_SIDE);
+			if (mailbox[square(7, 7)] != piece(WHITE, ROOK)) castling &= ~WHITE_KING_SIDE;
+			if (mailbox[square(7, 0)] != piece(WHITE, ROOK)) castling &= ~WHITE_QUEEN_SIDE;
+			if (mailbox[square(0, 7)] != piece(BLACK, ROOK)) castling &= ~BLACK_KING_SIDE;
+			if (mailbox[square(0, 0)] != piece(BLACK, ROOK)) castling &= ~BLACK_QUEEN_SIDE;
+		}
+
+		private void enPassant() {
+			if (!skipSpaces()) throw error("no en passant square");
+			if (fen.charAt(at) == '-') {
+				at++;
+				return;
+			}
+			if (at + 2 > fen.length()) throw error("bad en passant square");
+			enPassant = squareOf(fen.substring(at, at + 2));
+			at += 2;
+			// the square a pawn just skipped, so the rank depends on who moved
+			if (rowOf(enPassant) != (side == WHITE ? 2 : 5)) throw error("en passant square on the wrong rank");
+		}
+
+		private boolean inCheck(int colour) {
+			// straight off the mailbox, no Position needed
+			long king = bit(kings[colour]);
+			for (int sq = 0; sq < 64; sq++) {
+				int piece = mailbox[sq];
+				if (piece != EMPTY && colourOf(piece) != colour && (Attacks.attacksOf(piece, sq, occupied) & king) != 0) return true;
+			}
+			return false;
+		}
+
+		private int number() {
+			int start = at;
+			int value = 0;
+			for (; at < fen.length() && fen.charAt(at) >= '0' && fen.charAt(at) <= '9'; at++) {
+				if (at - start > 6) throw error("move counter too large");
+				value = value * 10 + fen.charAt(at) - '0';
+			}
+			if (at == start) throw error("move counters must be numbers");
+			return value;
+		}
+
+		private boolean skipSpaces() {
+			// true if there's another field
+			while (at < fen.length() && fen.charAt(at) == ' ') {
+				at++;
+			}
+			return at < fen.length();
+		}
+
+		String[] ids() {
+			// pawns first take their file's number, then any doubled pawns the numbers left over
+			String[] ids = new String[64];
+			int[] counts = new int[12];
+			int[] pawnNumbers = new int[2]; // bit per number taken
+			for (int sq = 0; sq < 64; sq++) {
+				int piece = mailbox[sq];
+				if (piece == EMPTY || typeOf(piece) != PAWN) continue;
+				int number = colOf(sq) + 1;
+				if ((pawnNumbers[colourOf(piece)] & 1 << number) != 0) continue;
+				pawnNumbers[colourOf(piece)] |= 1 << number;
+				ids[sq] = prefixOf(piece) + number;
+			}
+			for (int sq = 0; sq < 64; sq++) {
+				int piece = mailbox[sq];
+				if (piece == EMPTY || ids[sq] != null) continue;
+				if (typeOf(piece) == PAWN) {
+					int taken = pawnNumbers[colourOf(piece)];
+					int number = Integer.numberOfTrailingZeros(~taken & ~1);
+					if (number > 8) throw error("more than 8 pawns a side");
+					pawnNumbers[colourOf(piece)] |= 1 << number;
+					ids[sq] = prefixOf(piece) + number;
+				} else {
+					int count = ++counts[piece];
+					int type = typeOf(piece);
+					ids[sq] = (type == KING || type == QUEEN) && count == 1 ? prefixOf(piece) : prefixOf(piece) + count;
+				}
+			}
+			return ids;
+		}
+
+		private IllegalArgumentException error(String problem) {
+			return new IllegalArgumentException("bad FEN (" + problem + "): " + fen);
+		}
+	}
+
+	private static String prefixOf(int piece) {
+		return (colourOf(piece) == WHITE ? "w" : "b") + TYPES.charAt(typeOf(piece));
+	}
+
+	// -- WRITING -- //
+	public static String of(Position pos, int halfmoveClock, int fullmoveNumber) {
+		int[] mailbox = new int[64];
+		for (int sq = 0; sq < 64; sq++) {
+			mailbox[sq] = pos.pieceAt(sq);
+		}
+		return write(mailbox, pos.getSideToMove(), pos.getCastling(), pos.getEnPassant(), halfmoveClock, fullmoveNumber);
+	}
+
+	public static String of(GameState game) {
+		// the game as it stands, the move number carries on from the FEN it started from if it had one
+		int[] mailbox = new int[64];
+		for (int sq = 0; sq < 64; sq++) {
+			String id = game.getBoard().get(rowOf(sq), colOf(sq));
+			mailbox[sq] = id == null ? EMPTY : pieceOf(id);
+		}
+		int side = "BLACK".equals(game.getTurn()) ? BLACK : WHITE;
+
+		int fullmoveNumber = 1;
+		int startSide = WHITE;
+		if (game.getStartFen() != null) {
+			Parser start = new Parser(game.getStartFen());
+			fullmoveNumber = start.fullmoveNumber;
+			startSide = start.side;
+		}
+		// sequence counts plies from the start, the number goes up each time black has moved
+		fullmoveNumber += (int) ((game.getSequence() + startSide) / 2);
+		return write(mailbox, side, castlingRightsOf(game), enPassantOf(game), game.getHalfmoveClock(), fullmoveNumber);
+	}
+
+	private static String write(int[] mailbox, int side, int rights, int enPassant, int halfmoveClock, int fullmoveNumber) {
+		StringBuilder fen = new StringBuilder(90);
+		for (int row = 0; row < 8; row++) {
+			if (row > 0) fen.append('/');
+			int empty = 0;
+			for (int col = 0; col < 8; col++) {
+				int piece = mailbox[square(row, col)];
+				if (piece == EMPTY) {
+					empty++;
+					continue;
+				}
+				if (empty > 0) fen.append(empty);
+				empty = 0;
+				char ch = TYPES.charAt(typeOf(piece));
+				fen.append(colourOf(piece) == WHITE ? Character.toUpperCase(ch) : ch);
+			}
+			if (empty > 0) fen.append(empty);
+		}
+
+		fen.append(side == WHITE ? " w " : " b ");
+		if (rights == 0) fen.append('-');
+		if ((rights & WHITE_KING_SIDE) != 0) fen.append('K');
+		if ((rights & WHITE_QUEEN_SIDE) != 0) fen.append('Q');
+		if ((rights & BLACK_KING_SIDE) != 0) fen.append('k');
+		if ((rights & BLACK_QUEEN_SIDE) != 0) fen.append('q');
+		fen.append(' ').append(enPassant < 0 ? "-" : nameOf(enPassant));
+		return fen.append(' ').append(halfmoveClock).append(' ').append(fullmoveNumber).toString();
+	}
+
+	// -- SQUARES -- //
+	public static int squareOf(String name) {
+		// "e3" -> row 5, col 4
+		int col = name.charAt(0) - 'a';
+		int row = '8' - name.charAt(1);
+		if (col < 0 || col > 7 || row < 0 || row > 7) throw new IllegalArgumentException("bad square: " + name);
+		return square(row, col);
+	}
+
+	public static String nameOf(int sq) {
+		return "" + (char) ('a' + colOf(sq)) + (char) ('8' - rowOf(sq));
+	}
+
+	public static String moveName(int move) {
+		// long algebraic as UCI writes it, e.g. e2e4 or e7e8q
+		String name = nameOf(MoveList.from(move)) + nameOf(MoveList.to(move));
+		int promotion = MoveList.promotion(move);
+		return promotion == EMPTY ? name : name + TYPES.charAt(promotion);
+	}
+}
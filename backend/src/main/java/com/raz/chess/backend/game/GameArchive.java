@@ -0,0 +1,477 @@
+package com.raz.chess.backend.lobby;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+
+@Component
+public class GameArchive {
+	// every finished game, appended to numbered segment files (games-000001.archive, ...) that never change once full
+	// record: length (4) | payload | crc32 of payload (4)
+	// payload: gameId, white, black, start FEN (short length then UTF-8, an empty FEN is the usual start),
+	//          status (1), finished at (8, epoch millis), move count (2), moves (2 each, from | to << 6 | promotion type << 12)
+	//
+	// each segment has a sparse index by game id and by player name. the segment is cut into 64 KB blocks and
+	// the index only says which blocks have a record for a key, so there's one entry per key per block rather
+	// than per game, and a lookup reads a block or two front to back. a full segment's index is written next
+	// to it (games-000001.index: key hash (8) | block start (4), sorted) and both are memory mapped for reading,
+	// so exports walk the page cache instead of copying segments onto the heap. the segment being written
+	// keeps its index in memory and gets it rebuilt by a scan at startup
+
+	private static final String PREFIX = "games-", SUFFIX = ".archive", INDEX_SUFFIX = ".index";
+	private static final int BLOCK_BYTES = 64 * 1024;
+	private static final int INDEX_ENTRY_BYTES = 12;
+	private static final byte GAME_KEY = 'g', PLAYER_KEY = 'p';
+	private static final GameState.Status[] STATUSES = GameState.Status.values();
+
+	public interface Visitor {
+		void visit(ArchivedGame game) throws IOException;
+	}
+
+	private static final class Segment {
+		final long number;
+		final Path file;
+		volatile long size; // bytes of whole records, readers never look past it
+		ByteBuffer data; // mapping of a full segment, made on first read
+		ByteBuffer index; // sorted index of a full segment
+		Map<Long, List<Integer>> blocks = new HashMap<>(); // key hash -> block starts, while it's being written
+
+		Segment(long number, Path file) {
+			this.number = number;
+			this.file = file;
+		}
+
+		synchronized int[] blocksOf(long key) {
+			if (index == null) {
+				List<Integer> starts = blocks.get(key);
+				return starts == null ? new int[0] : starts.stream().mapToInt(Integer::intValue).toArray();
+			}
+
+			// binary search for the first entry with the key, they're sorted by key then block
+			int count = index.capacity() / INDEX_ENTRY_BYTES;
+			int lo = 0, hi = count;
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				if (Long.compareUnsigned(index.getLong(mid * INDEX_ENTRY_BYTES), key) < 0) lo = mid + 1;
+				else hi = mid;
+			}
+			int end = lo;
+			while (end < count && index.getLong(end * INDEX_ENTRY_BYTES) == key) {
+				end++;
+			}
+			int[] starts = new int[end - lo];
+			for (int i = lo; i < end; i++) {
+				starts[i - lo] = index.getInt(i * INDEX_ENTRY_BYTES + 8);
+			}
+			return starts;
+		}
+
+		synchronized ByteBuffer data() throws IOException {
+			// full segments are mapped once, the one being written is mapped up to what's there each time
+			if (data != null) return data.duplicate();
+			ByteBuffer mapped = map(file, size);
+			if (index != null) data = mapped;
+			return mapped.duplicate();
+		}
+	}
+
+	private final boolean enabled;
+	private final Path directory;
+	private final long segmentBytes;
+	private final List<Segment> segments = new CopyOnWriteArrayList<>();
+
+	// only the writer thread touches these
+	private final ExecutorService writer;
+	private FileChannel channel;
+	private int block = -1;
+	private int blockStart;
+	private final Set<Long> blockKeys = new HashSet<>();
+
+	public GameArchive(@Value("${chess.archive.enabled:true}") boolean enabled, @Value("${chess.archive.dir:archive}") String dir,
+			@Value("${chess.archive.segment-mb:64}") int segmentMb) {
+		this.enabled = enabled;
+		this.segmentBytes = Math.max(1, segmentMb) * 1024L * 1024L;
+		if (!enabled) {
+			directory = null;
+			writer = null;
+			return;
+		}
+
+		try {
+			directory = Path.of(dir);
+			Files.createDirectories(directory);
+			open();
+		} catch (IOException e) {
+			throw new IllegalStateException("Can't open game archive in " + dir, e);
+		}
+
+		writer = Executors.newSingleThreadExecutor(r -> {
+			Thread t = new Thread(r, "game-archive");
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	public static GameArchive disabled() {
+		return new GameArchive(false, null, 1);
+	}
+
+	// -- WRITING -- //
+	public void append(GameState game, Runnable archived) {
+		// called with the game's lock held once it's over, the write itself happens on the archive's thread
+		// archived runs there once the record is on disk, and not at all if the write fails
+		if (!enabled) {
+			archived.run();
+			return;
+		}
+		ArchivedGame record = ArchivedGame.of(game, System.currentTimeMillis());
+		writer.execute(() -> {
+			if (write(record)) archived.run();
+		});
+	}
+
+	public void appendIfMissing(GameState game, Runnable archived) {
+		// for games that finished before a restart, the archive write may not have made it
+		if (!enabled) {
+			archived.run();
+			return;
+		}
+		ArchivedGame record = ArchivedGame.of(game, System.currentTimeMillis());
+		writer.execute(() -> {
+			try {
+				if (find(record.getGameId()) != null || write(record)) archived.run();
+			} catch (IOException e) {
+				System.out.println("Game archive lookup failed: " + e.getMessage());
+			}
+		});
+	}
+
+	private boolean write(ArchivedGame game) {
+		ByteBuffer record = encode(game);
+		try {
+			Segment segment = segments.get(segments.size() - 1);
+			if (segment.size > 0 && segment.size + record.remaining() > segmentBytes) {
+				segment = roll(segment);
+			}
+
+			int offset = (int) segment.size;
+			while (record.hasRemaining()) {
+				channel.write(record);
+			}
+			channel.force(false);
+			index(segment, offset, game);
+			segment.size = channel.position();
+			return true;
+		} catch (IOException e) {
+			System.out.println("Game archive write failed for " + game.getGameId() + ": " + e.getMessage());
+			return false;
+		}
+	}
+
+	private void index(Segment segment, int offset, ArchivedGame game) {
+		// a block is every record starting in the same 64 KB, found from the first of them
+		if (offset / BLOCK_BYTES != block) {
+			block = offset / BLOCK_BYTES;
+			blockStart = offset;
+			blockKeys.clear();
+		}
+		long[] keys = {key(GAME_KEY, game.getGameId()), key(PLAYER_KEY, game.getWhitePlayer()), key(PLAYER_KEY, game.getBlackPlayer())};
+		synchronized (segment) {
+			for (long key : keys) {
+				if (blockKeys.add(key)) segment.blocks.computeIfAbsent(key, k -> new ArrayList<>()).add(blockStart);
+			}
+		}
+	}
+
+	private Segment roll(Segment full) throws IOException {
+		// the full segment's index goes to disk and gets mapped, writing carries on in a new segment
+		channel.close();
+		seal(full);
+
+		Segment next = new Segment(full.number + 1, segmentFile(full.number + 1));
+		channel = FileChannel.open(next.file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		segments.add(next);
+		block = -1;
+		blockKeys.clear();
+		return next;
+	}
+
+	private void seal(Segment segment) throws IOException {
+		List<long[]> entries = new ArrayList<>();
+		synchronized (segment) {
+			for (Map.Entry<Long, List<Integer>> key : segment.blocks.entrySet()) {
+				for (int start : key.getValue()) {
+					entries.add(new long[]{key.getKey(), start});
+				}
+			}
+		}
+		entries.sort((a, b) -> a[0] != b[0] ? Long.compareUnsigned(a[0], b[0]) : Long.compare(a[1], b[1]));
+
+		ByteBuffer out = ByteBuffer.allocate(entries.size() * INDEX_ENTRY_BYTES);
+		for (long[] entry : entries) {
+			out.putLong(entry[0]).putInt((int) entry[1]);
+		}
+		Path file = indexFile(segment.number);
+		Path temp = Files.createTempFile(directory, PREFIX, ".tmp");
+		Files.write(temp, out.array());
+		Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		ByteBuffer index = map(file, Files.size(file));
+		synchronized (segment) {
+			segment.index = index;
+			segment.blocks = null;
+		}
+	}
+
+	@PreDestroy
+	public void close() {
+		// lets queued games reach the disk first
+		if (!enabled) return;
+		writer.shutdown();
+		try {
+			writer.awaitTermination(5, TimeUnit.SECONDS);
+			channel.close();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (IOException e) {
+			System.out.println("Game archive close failed: " + e.getMessage());
+		}
+	}
+
+	// -- STARTUP -- //
+	private void open() throws IOException {
+		// full segments get their index from its file (or a scan if it never got written),
+		// the last one is scanned to rebuild its in-memory index and lose any record cut off by a crash
+		List<Long> numbers = segmentNumbers();
+		if (numbers.isEmpty()) numbers = List.of(1L);
+
+		for (int i = 0; i < numbers.size(); i++) {
+			long number = numbers.get(i);
+			Segment segment = new Segment(number, segmentFile(number));
+			boolean last = i == numbers.size() - 1;
+			segments.add(segment);
+
+			if (!last && Files.exists(indexFile(number))) {
+				segment.size = Files.size(segment.file);
+				segment.index = map(indexFile(number), Files.size(indexFile(number)));
+				segment.blocks = null;
+				continue;
+			}
+
+			channel = FileChannel.open(segment.file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			int good = rebuild(segment, map(segment.file, channel.size()));
+			if (good < channel.size()) {
+				System.out.println("Game archive: dropping " + (channel.size() - good) + " bytes of unfinished records in " + segment.file.getFileName());
+				channel.truncate(good);
+			}
+			channel.position(good);
+			segment.size = good;
+			if (!last) {
+				channel.close();
+				seal(segment);
+			}
+		}
+	}
+
+	private int rebuild(Segment segment, ByteBuffer data) {
+		// indexes every intact record, returns where the intact ones end
+		block = -1;
+		blockKeys.clear();
+		int offset = 0;
+		while (data.capacity() - offset >= 8) {
+			int length = data.getInt(offset);
+			if (length <= 0 || length > data.capacity() - offset - 8) break;
+
+			ByteBuffer payload = data.slice(offset + 4, length);
+			CRC32 crc = new CRC32();
+			crc.update(payload.duplicate());
+			if ((int) crc.getValue() != data.getInt(offset + 4 + length)) break;
+
+			index(segment, offset, decode(payload));
+			offset += length + 8;
+		}
+		return offset;
+	}
+
+	// -- READING -- //
+	public ArchivedGame find(String gameId) throws IOException {
+		// newest segment first, a game is only ever archived once
+		if (!enabled || gameId == null) return null;
+		long key = key(GAME_KEY, gameId);
+		for (int i = segments.size() - 1; i >= 0; i--) {
+			Segment segment = segments.get(i);
+			for (int start : segment.blocksOf(key)) {
+				ArchivedGame[] found = new ArchivedGame[1];
+				scanBlock(segment, start, game -> {
+					if (found[0] == null && gameId.equals(game.getGameId())) found[0] = game;
+				});
+				if (found[0] != null) return found[0];
+			}
+		}
+		return null;
+	}
+
+	public int export(String player, Visitor visitor) throws IOException {
+		// every archived game in the order they finished, or just one player's games when player is given
+		// reads are sequential over the mapped segments and only one game is decoded at a time
+		if (!enabled) return 0;
+		int[] count = new int[1];
+		Visitor counting = game -> {
+			if (player == null || player.equals(game.getWhitePlayer()) || player.equals(game.getBlackPlayer())) {
+				visitor.visit(game);
+				count[0]++;
+			}
+		};
+
+		for (Segment segment : segments) {
+			if (player == null) {
+				scan(segment.data(), 0, Integer.MAX_VALUE, counting);
+				continue;
+			}
+			for (int start : segment.blocksOf(key(PLAYER_KEY, player))) {
+				scanBlock(segment, start, counting);
+			}
+		}
+		return count[0];
+	}
+
+	private static void scanBlock(Segment segment, int start, Visitor visitor) throws IOException {
+		// records that start in the same block as start does
+		int end = (start / BLOCK_BYTES + 1) * BLOCK_BYTES;
+		scan(segment.data(), start, end, visitor);
+	}
+
+	private static void scan(ByteBuffer data, int offset, int end, Visitor visitor) throws IOException {
+		while (offset < end && data.limit() - offset >= 8) {
+			int length = data.getInt(offset);
+			if (length <= 0 || length > data.limit() - offset - 8) return;
+			visitor.visit(decode(data.slice(offset + 4, length)));
+			offset += length + 8;
+		}
+	}
+
+	// -- RECORDS -- //
+	private static ByteBuffer encode(ArchivedGame game) {
+		byte[] id = utf8(game.getGameId()), white = utf8(game.getWhitePlayer()), black = utf8(game.getBlackPlayer());
+		byte[] fen = utf8(game.getStartFen());
+		int[] moves = game.getMoves();
+		int moveCount = Math.min(moves.length, 0xFFFF);
+		int length = 8 + id.length + white.length + black.length + fen.length + 1 + 8 + 2 + moveCount * 2;
+
+		ByteBuffer record = ByteBuffer.allocate(4 + length + 4);
+		record.putInt(length);
+		putString(record, id);
+		putString(record, white);
+		putString(record, black);
+		putString(record, fen);
+		record.put((byte) game.getStatus().ordinal());
+		record.putLong(game.getFinishedAt());
+		record.putShort((short) moveCount);
+		for (int i = 0; i < moveCount; i++) {
+			int move = moves[i];
+			int promotion = MoveList.promotion(move);
+			record.putShort((short) (MoveList.from(move) | MoveList.to(move) << 6 | (promotion == Position.EMPTY ? 0 : promotion) << 12));
+		}
+
+		CRC32 crc = new CRC32();
+		crc.update(record.array(), 4, length);
+		record.putInt((int) crc.getValue());
+		return record.flip();
+	}
+
+	private static ArchivedGame decode(ByteBuffer b) {
+		String gameId = getString(b);
+		String white = getString(b);
+		String black = getString(b);
+		String fen = getString(b);
+		GameState.Status status = STATUSES[b.get()];
+		long finishedAt = b.getLong();
+		int[] moves = new int[b.getShort() & 0xFFFF];
+		for (int i = 0; i < moves.length; i++) {
+			int packed = b.getShort() & 0xFFFF;
+			moves[i] = MoveList.withPromotion(MoveList.encode(packed & 63, (packed >>> 6) & 63, 0), packed >>> 12);
+		}
+		return new ArchivedGame(gameId, white, black, fen.isEmpty() ? null : fen, status, finishedAt, moves);
+	}
+
+	private static long key(byte kind, String value) {
+		// 64-bit FNV-1a of the kind and the UTF-8 bytes, collisions only cost a block read
+		long hash = 0xcbf29ce484222325L;
+		hash = (hash ^ kind) * 0x100000001b3L;
+		for (byte b : utf8(value)) {
+			hash = (hash ^ (b & 0xFF)) * 0x100000001b3L;
+		}
+		return hash;
+	}
+
+	// -- FILES -- //
+	private List<Long> segmentNumbers() throws IOException {
+		List<Long> numbers = new ArrayList<>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+			for (Path f : files) {
+				String name = f.getFileName().toString();
+				try {
+					numbers.add(Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())));
+				} catch (NumberFormatException e) {
+					// not one of ours
+				}
+			}
+		}
+		Collections.sort(numbers);
+		return numbers;
+	}
+
+	private Path segmentFile(long number) {
+		return directory.resolve(String.format("%s%06d%s", PREFIX, number, SUFFIX));
+	}
+
+	private Path indexFile(long number) {
+		return directory.resolve(String.format("%s%06d%s", PREFIX, number, INDEX_SUFFIX));
+	}
+
+	private static ByteBuffer map(Path file, long size) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			// the mapping outlives the channel
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+		}
+	}
+
+	private static byte[] utf8(String s) {
+		byte[] bytes = (s == null ? "" : s).getBytes(StandardCharsets.UTF_8);
+		return bytes.length > Short.MAX_VALUE ? Arrays.copyOf(bytes, Short.MAX_VALUE) : bytes;
+	}
+
+	private static void putString(ByteBuffer b, byte[] bytes) {
+		b.putShort((short) bytes.length).put(bytes);
+	}
+
+	private static String getString(ByteBuffer b) {
+		byte[] bytes = new byte[b.getShort()];
+		b.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
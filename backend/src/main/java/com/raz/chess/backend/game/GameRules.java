@@ -1,391 +1,540 @@
 package com.raz.chess.backend.lobby;
 
-import java.util.ArrayList;
 import java.util.List;
 
+import static com.raz.chess.backend.lobby.Attacks.*;
+import static com.raz.chess.backend.lobby.MoveList.*;
+import static com.raz.chess.backend.lobby.Position.*;
+
 public class GameRules {
-	private static final String EMPTY = null;
-	
-	private static char colourOf(String piece) {
-		return piece == null ? '-' : piece.charAt(0); // 'w' or 'b'
-	}
-	
-	private static char typeOf(String piece) {
-		return piece == null ? '-' : piece.charAt(1); // 'p', 'n', 'k', etc.
-	}
-	
-	// raw moves
-	private static List<int[]> computeRawMoves(Board board, int row, int col, boolean forAttack) {
-		String piece = board.get(row, col);
-		List<int[]> moves = new ArrayList<>();
-		if (piece == null) return moves;
-		
-		char colour = colourOf(piece);
-		char type = typeOf(piece);
-		
-		// compute moves for each piece type
-		// bishop, rook, queen can all be computed from the same function
-		if (type == 'p') {
-			computePawnMoves(board, row, col, colour, forAttack, moves);
-		} else if (type == 'n') {
-			computeKnightMoves(board, row, col, colour, moves);
-		} else if (type == 'b') {
-			// bishop only goes diagonally, check up left/right and down left/right
-			computeSlidingMoves(board, row, col, colour, moves,
-                    new int[][]{{-1,-1},{-1,1},{1,-1},{1,1}});
-		} else if (type == 'r') {
-			// check up, down, left, right from rook
-			computeSlidingMoves(board, row, col, colour, moves,
-                    new int[][]{{-1,0},{1,0},{0,-1},{0,1}});
-		} else if (type == 'q') {
-			// combine rook and bishop
-			computeSlidingMoves(board, row, col, colour, moves,
-                    new int[][]{{-1,-1},{-1,1},{1,-1},{1,1},{-1,0},{1,0},{0,-1},{0,1}});
-		} else if (type == 'k') {
-			computeKingMoves(board, row, col, colour, moves);
-		}
-		
-		return moves;
-	}
-	
-	private static boolean inBounds(int r, int c) {
-        return r >= 0 && r < 8 && c >= 0 && c < 8;
-    }
-	
+	// all the rules run on a Position (bitboards), the Board/GameState entry points just convert once
+	// moves are generated into a MoveList as packed ints, so nothing is allocated per move
+
+	// scratch buffer for the public entry points, one per thread since the controllers are multi threaded
+	private static final ThreadLocal<MoveList> BUFFER = ThreadLocal.withInitial(MoveList::new);
+
 	// -- PIECE MOVES -- //
-	private static void computePawnMoves(Board board, int row, int col, char colour, boolean forAttack, List<int[]> moves) {
+	private static void generatePseudoMoves(Position pos, int from, MoveList moves) {
+		int piece = pos.pieceAt(from);
+		if (piece == EMPTY) return;
+
+		int colour = colourOf(piece);
+		long own = pos.colour(colour);
+		long enemy = pos.colour(colour ^ 1);
+		long occupied = pos.occupied();
+
+		// every piece but the pawn captures the way it moves, so it's just its attack set minus our own pieces
+		switch (typeOf(piece)) {
+			case PAWN:
+				generatePawnMoves(pos, from, colour, moves);
+				break;
+			case KNIGHT:
+				addMoves(from, KNIGHT_ATTACKS[from] & ~own, enemy, moves);
+				break;
+			case BISHOP:
+				addMoves(from, bishopAttacks(from, occupied) & ~own, enemy, moves);
+				break;
+			case ROOK:
+				addMoves(from, rookAttacks(from, occupied) & ~own, enemy, moves);
+				break;
+			case QUEEN:
+				addMoves(from, (bishopAttacks(from, occupied) | rookAttacks(from, occupied)) & ~own, enemy, moves);
+				break;
+			case KING:
+				addMoves(from, KING_ATTACKS[from] & ~own, enemy, moves);
+				break;
+		}
+	}
+
+	private static void addMoves(int from, long targets, long enemy, MoveList moves) {
+		while (targets != 0) {
+			int to = Long.numberOfTrailingZeros(targets);
+			targets &= targets - 1;
+			moves.add(encode(from, to, (enemy & bit(to)) != 0 ? CAPTURE : 0));
+		}
+	}
+
+	private static void generatePawnMoves(Position pos, int from, int colour, MoveList moves) {
 		// determine if we're white or black and which direction we're heading
-		int dir = (colour == 'w') ? -1 : 1;
-        int startRow = (colour == 'w') ? 6 : 1;
-        int nextRow = row + dir;
-        
-        // forward moves (no capture)
-        if (!forAttack) {
-            if (inBounds(nextRow, col) && board.get(nextRow, col) == EMPTY) {
-            	// add first row, then check the row after
-                moves.add(new int[]{nextRow, col});
-                int nextRow2 = row + 2 * dir;
-                if (row == startRow && inBounds(nextRow2, col)
-                        && board.get(nextRow2, col) == EMPTY) {
-                    moves.add(new int[]{nextRow2, col});
-                }
-            }
-        }
-        
-        // diagonals/captures
-        int[] diagCols = {col - 1, col + 1};
-        for (int dc : diagCols) {
-            if (!inBounds(nextRow, dc)) continue;
-            
-            // get the target on each diagonal, check if it's not the same colour
-            String target = board.get(nextRow, dc);
-            if (target != EMPTY && colourOf(target) != colour) {
-                moves.add(new int[]{nextRow, dc});
-            } else if (forAttack) {
-                // "control squares" even when empty, add them here
-            }
-        }
-	}
-	
-	private static void addEnPassantMoves(GameState gameState, int row, int col, List<int[]> moves) {
-		// check if we have a target for en passant
-		int targetRow = gameState.getEnPassantRow();
-		int targetCol = gameState.getEnPassantCol();
-		if (targetRow < 0 || targetCol < 0) return;
-		
-		Board board = gameState.getBoard();
-		String piece = board.get(row, col);
-		if (piece == null | typeOf(piece) != 'p') return;
-		
-		char colour = colourOf(piece);
-		int dir = (colour == 'w') ? -1 : 1;
-		
-		// en passant square needs to be one row ahead and one column over
-		// piece must be to the column either to the left or right of the current pawn
-		if (row + dir == targetRow && Math.abs(col - targetCol) == 1) {
-			int capturedRow = targetRow - dir;
-			String captured = board.get(capturedRow, targetCol);
-			if (captured != null && colourOf(captured) != colour && typeOf(captured) == 'p' && board.get(targetRow, targetCol) == EMPTY) {
-				moves.add(new int[]{targetRow, targetCol});
+		int dir = (colour == WHITE) ? -8 : 8;
+		int startRow = (colour == WHITE) ? 6 : 1;
+		int lastRow = (colour == WHITE) ? 0 : 7;
+		long occupied = pos.occupied();
+		int promotion = rowOf(from + dir) == lastRow ? PROMOTION : 0;
+
+		// forward moves (no capture), add first row, then check the row after
+		int next = from + dir;
+		if ((occupied & bit(next)) == 0) {
+			moves.add(encode(from, next, promotion));
+			int next2 = next + dir;
+			if (rowOf(from) == startRow && (occupied & bit(next2)) == 0) {
+				moves.add(encode(from, next2, DOUBLE_PUSH));
 			}
 		}
-	}
-	
-	private static void computeKnightMoves(Board board, int row, int col, char colour, List<int[]> moves) {
-		// 8 directions for knight
-		int[][] toCheck = {
-				{-2,-1},{-2,1},{-1,-2},{-1,2},
-	            {1,-2},{1,2},{2,-1},{2,1}
-		};
-		
-		// loop through each
-		for (int[] d : toCheck) {
-            int r = row + d[0];
-            int c = col + d[1];
-            if (!inBounds(r, c)) continue;
-            String target = board.get(r, c);
-            if (target == EMPTY || colourOf(target) != colour) {
-                moves.add(new int[]{r, c});
-            }
-        }
-	}
-	
-	private static void computeSlidingMoves(Board board, int row, int col, char colour, List<int[]> moves, int[][] directions) {
-		// bishop, rook, queen
-		// loop through directions given
-		for (int[] dir : directions) {
-			 int r = row + dir[0];
-	         int c = col + dir[1];
-	         while (inBounds(r, c)) {
-	        	 String target = board.get(r, c);
-	             if (target == EMPTY) {
-	            	 moves.add(new int[]{r, c});
-	             } else {
-	            	 if (colourOf(target) != colour) {
-	            		 moves.add(new int[]{r, c});
-	            	 }
-	                 break; // blocked
-	             }
-	             r += dir[0];
-	             c += dir[1];
-	         }
+
+		// diagonals/captures
+		long captures = PAWN_ATTACKS[colour][from] & pos.colour(colour ^ 1);
+		while (captures != 0) {
+			int to = Long.numberOfTrailingZeros(captures);
+			captures &= captures - 1;
+			moves.add(encode(from, to, CAPTURE | promotion));
+		}
+
+		// en passant square needs to be diagonally ahead and empty, with an enemy pawn beside us on its column
+		int target = pos.getEnPassant();
+		if (target >= 0 && (PAWN_ATTACKS[colour][from] & bit(target)) != 0 && (occupied & bit(target)) == 0) {
+			int captured = square(rowOf(from), colOf(target));
+			if ((pos.pieces(colour ^ 1, PAWN) & bit(captured)) != 0) {
+				moves.add(encode(from, target, CAPTURE | EN_PASSANT));
+			}
 		}
 	}
-	
-	private static void computeKingMoves(Board board, int row, int col, char colour, List<int[]> moves) {
-		int[][] toCheck = {
-				{-1,-1},{-1,0},{-1,1},
-				{0,-1},{0,1},
-				{1,-1},{1,0},{1,1}
-        };
-		
-		for (int[] d : toCheck) {
-			int r = row + d[0];
-            int c = col + d[1];
-            if (!inBounds(r, c)) continue;
-            String target = board.get(r, c);
-            if (target == EMPTY || colourOf(target) != colour) {
-                moves.add(new int[]{r, c});
-            }
+
+	private static void generateCastlingMoves(Position pos, int from, int colour, MoveList moves) {
+		boolean isWhite = (colour == WHITE);
+		int homeRow = isWhite ? 7 : 0;
+
+		if (from != square(homeRow, 4)) {
+			return; // king not on initial square so can't castle
+		}
+
+		long occupied = pos.occupied();
+		long rooks = pos.pieces(colour, ROOK);
+		long attacked = pos.attackMap(colour ^ 1);
+		if ((attacked & bit(from)) != 0) {
+			return; // king is in check, can't castle
+		}
+
+		// king side: f and g (5 and 6) must be empty, and the king can't pass through or land on an attacked square
+		if ((pos.getCastling() & (isWhite ? WHITE_KING_SIDE : BLACK_KING_SIDE)) != 0) {
+			long between = bit(square(homeRow, 5)) | bit(square(homeRow, 6));
+			if ((occupied & between) == 0 && (rooks & bit(square(homeRow, 7))) != 0 && (attacked & between) == 0) {
+				moves.add(encode(from, square(homeRow, 6), CASTLING));
+			}
+		}
+
+		// queen side: b, c and d (1 to 3) must be empty, the king only passes d and c
+		if ((pos.getCastling() & (isWhite ? WHITE_QUEEN_SIDE : BLACK_QUEEN_SIDE)) != 0) {
+			long between = bit(square(homeRow, 3)) | bit(square(homeRow, 2)) | bit(square(homeRow, 1));
+			long path = bit(square(homeRow, 3)) | bit(square(homeRow, 2));
+			if ((occupied & between) == 0 && (rooks & bit(square(homeRow, 0))) != 0 && (attacked & path) == 0) {
+				moves.add(encode(from, square(homeRow, 2), CASTLING));
+			}
 		}
-		// TODO: castling later
 	}
-	
+
 	// -- ATTACK/CHECK -- //
 	public static boolean isSquareAttacked(Board board, int targetRow, int targetCol, char attackerColour) {
-		// loop through every piece and check if a certain square is being attacked
-		for (int r = 0; r < 8; r++) {
-            for (int c = 0; c < 8; c++) {
-                String piece = board.get(r, c);
-                if (piece == null || colourOf(piece) != attackerColour) continue;
-
-                // use raw moves from the attacker square
-                List<int[]> rawMoves = computeRawMoves(board, r, c, true);
-                for (int[] mv : rawMoves) {
-                    if (mv[0] == targetRow && mv[1] == targetCol) {
-                        return true;
-                    }
-                }
-            }
-        }
-        return false;
+		return isSquareAttacked(Position.fromBoard(board), targetRow, targetCol, colourOf(attackerColour));
+	}
+
+	public static boolean isSquareAttacked(Position pos, int targetRow, int targetCol, int attackerColour) {
+		// work outwards from the target square instead of generating every enemy piece's moves
+		return Attacks.isSquareAttacked(pos, square(targetRow, targetCol), attackerColour);
 	}
-	
+
 	public static int[] findKing(Board board, char colour) {
 		// pretty straight forward just find the king on the board
-		for (int r = 0; r < 8; r++) {
-            for (int c = 0; c < 8; c++) {
-                String piece = board.get(r, c);
-                if (piece != null && typeOf(piece) == 'k' && colourOf(piece) == colour) {
-                    return new int[]{r, c};
-                }
-            }
-        }
-        return null;
-	}
-	
+		int sq = Position.fromBoard(board).kingSquare(colourOf(colour));
+		return sq < 0 ? null : new int[]{rowOf(sq), colOf(sq)};
+	}
+
 	public static boolean isKingInCheck(Board board, char colour) {
-		int[] kingPos = findKing(board, colour);
-		if (kingPos == null) return false; // shouldn't happen in a game
-		char enemy = (colour == 'w') ? 'b' : 'w';
-	    return isSquareAttacked(board, kingPos[0], kingPos[1], enemy);
+		return isKingInCheck(Position.fromBoard(board), colourOf(colour));
+	}
+
+	public static boolean isKingInCheck(Position pos, int colour) {
+		int king = pos.kingSquare(colour);
+		if (king < 0) return false; // shouldn't happen in a game
+	    return Attacks.isSquareAttacked(pos, king, colour ^ 1);
 	}
-	
+
 	public static boolean hasAnyLegalMove(GameState gameState, char colour) {
-		Board board = gameState.getBoard();
-		for (int r = 0; r < 8; r++) {
-            for (int c = 0; c < 8; c++) {
-                String piece = board.get(r, c);
-                if (piece == null || colourOf(piece) != colour) continue;
-                List<int[]> legal = computeLegalMoves(gameState, r, c);
-                if (!legal.isEmpty()) return true;
-            }
-        }
+		return hasAnyLegalMove(Position.fromGameState(gameState), colourOf(colour));
+	}
+
+	public static boolean hasAnyLegalMove(Position pos, int colour) {
+		// stops at the first legal move found, trying the likeliest movers first
+		int king = pos.kingSquare(colour);
+		if (king < 0) return hasAnyLegalMoveSlow(pos, colour);
+
+		long occupied = pos.occupied();
+		long checkers = attackersOf(pos, king, colour ^ 1, occupied);
+
+		// king escapes first, they're the only way out of a double check
+		// castling never needs looking at, if it's legal then so is the king's first step
+		if (hasKingEscape(pos, king, colour, occupied)) return true;
+		if (checkers == 0) return hasQuietLegalMove(pos, king, colour);
+		if (Long.bitCount(checkers) > 1) return false;
+
+		// single check: take the checker, or step in between
+		int checker = Long.numberOfTrailingZeros(checkers);
+		return canCaptureChecker(pos, king, checker, colour, occupied)
+				|| canBlockCheck(pos, king, checker, colour, occupied);
+	}
+
+	private static boolean hasKingEscape(Position pos, int king, int colour, long occupied) {
+		// attacks are worked out with the king lifted off, so it can't hide behind itself on a checking line
+		long targets = KING_ATTACKS[king] & ~pos.colour(colour);
+		long withoutKing = occupied ^ bit(king);
+		while (targets != 0) {
+			int to = Long.numberOfTrailingZeros(targets);
+			targets &= targets - 1;
+			if (attackersOf(pos, to, colour ^ 1, withoutKing) == 0) return true;
+		}
+		return false;
+	}
+
+	private static boolean hasQuietLegalMove(Position pos, int king, int colour) {
+		// not in check, so a piece off every line through our king can't be pinned and any move it has is legal
+		// those go first, pieces on a line (and en passant, which lifts two pawns) are checked by making the move
+		long lines = bishopAttacks(king, 0) | rookAttacks(king, 0);
+		long own = pos.colour(colour) & ~bit(king);
+		return hasLegalMoveFrom(pos, own & ~lines, true, colour)
+				|| hasLegalMoveFrom(pos, own & lines, false, colour);
+	}
+
+	private static boolean hasLegalMoveFrom(Position pos, long pieces, boolean free, int colour) {
+		// free pieces can't be pinned, so only their en passant captures need making to be sure
+		MoveList moves = BUFFER.get();
+		while (pieces != 0) {
+			int sq = Long.numberOfTrailingZeros(pieces);
+			pieces &= pieces - 1;
+
+			moves.clear();
+			generatePseudoMoves(pos, sq, moves);
+			for (int i = 0; i < moves.size(); i++) {
+				int move = moves.get(i);
+				if (free && !MoveList.is(move, EN_PASSANT)) return true;
+				if (isLegal(pos, sq, to(move), colour)) return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean canCaptureChecker(Position pos, int king, int checker, int colour, long occupied) {
+		long capturers = attackersOf(pos, checker, colour, occupied) & ~bit(king);
+		while (capturers != 0) {
+			int from = Long.numberOfTrailingZeros(capturers);
+			capturers &= capturers - 1;
+			if (isLegal(pos, from, checker, colour)) return true;
+		}
+
+		// a pawn that just double pushed into check can also go en passant
+		int target = pos.getEnPassant();
+		if (target >= 0 && typeOf(pos.pieceAt(checker)) == PAWN && colOf(target) == colOf(checker)) {
+			long pawns = PAWN_ATTACKS[colour ^ 1][target] & pos.pieces(colour, PAWN);
+			while (pawns != 0) {
+				int from = Long.numberOfTrailingZeros(pawns);
+				pawns &= pawns - 1;
+				if (isLegal(pos, from, target, colour)) return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean canBlockCheck(Position pos, int king, int checker, int colour, long occupied) {
+		// only sliders can be blocked, between is empty for knights, pawns and adjacent checkers
+		long between = between(king, checker);
+		long pawns = pos.pieces(colour, PAWN);
+		int dir = (colour == WHITE) ? -8 : 8;
+		int startRow = (colour == WHITE) ? 6 : 1;
+
+		while (between != 0) {
+			int to = Long.numberOfTrailingZeros(between);
+			between &= between - 1;
+
+			// pawns don't capture onto empty squares, so they only block by pushing
+			long blockers = attackersOf(pos, to, colour, occupied) & ~pawns & ~bit(king);
+			int from = to - dir;
+			if (from >= 0 && from < 64 && (pawns & bit(from)) != 0) {
+				blockers |= bit(from);
+			} else if (from >= 0 && from < 64 && (occupied & bit(from)) == 0) {
+				int from2 = from - dir;
+				if (from2 >= 0 && from2 < 64 && rowOf(from2) == startRow && (pawns & bit(from2)) != 0) {
+					blockers |= bit(from2);
+				}
+			}
+
+			while (blockers != 0) {
+				int sq = Long.numberOfTrailingZeros(blockers);
+				blockers &= blockers - 1;
+				if (isLegal(pos, sq, to, colour)) return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean isLegal(Position pos, int from, int to, int colour) {
+		pos.makeMove(from, to, EMPTY);
+		boolean safe = !isKingInCheck(pos, colour);
+		pos.unmakeMove();
+		return safe;
+	}
+
+	private static boolean hasAnyLegalMoveSlow(Position pos, int colour) {
+		// no king on the board, only in hand built positions
+		MoveList moves = BUFFER.get();
+		long own = pos.colour(colour);
+		while (own != 0) {
+			int sq = Long.numberOfTrailingZeros(own);
+			own &= own - 1;
+			moves.clear();
+			generateLegalMoves(pos, sq, moves);
+			if (!moves.isEmpty()) return true;
+		}
         return false;
 	}
-	
+
 	// -- LEGAL MOVES -- //
 	public static List<int[]> computeLegalMoves(GameState gameState, int row, int col) {
-		Board board = gameState.getBoard();
-		String piece = board.get(row, col);
-        List<int[]> result = new ArrayList<>();
-        if (piece == null) return result;
-
-        char color = colourOf(piece);
-        List<int[]> raw = computeRawMoves(board, row, col, false);
-        if (typeOf(piece) == 'p') {
-        	addEnPassantMoves(gameState, row, col, raw);
-        }
-        	
-        // loop through all raw moves
-        for (int[] move : raw) {
-            int r = move[0], c = move[1];
-            
-            // copy the board and simulate this move
-            Board copy = board.copy();
-            boolean isEnPassant = isEnPassantMove(gameState, row, col, r, c);
-            
-            copy.move(row, col, r, c);
-            
-            if (isEnPassant) {
-            	removeEnPassantPawn(copy, color, r, c);
-            }
-
-            // if the king is safe, add this as a valid move
-            if (!isKingInCheck(copy, color)) {
-                result.add(new int[]{r, c});
-            }
-        }
-        
-        // If it's a king, add castling squares if allowed
-        if (typeOf(piece) == 'k') {
-            addCastlingMoves(gameState, row, col, color, result);
-        }
-        
-        return result;
-	}
-	
-	private static void addCastlingMoves(GameState gameState, int row, int col, char colour, List<int[]> moves) {
-		Board board = gameState.getBoard();
-		boolean isWhite = (colour == 'w');
-		
-		int homeRow = isWhite ? 7 : 0;
-		int kingCol = 4;
-		
-		if (row != homeRow || col != kingCol) {
-			return; // king not on initial square so can't castle
+		return computeLegalMoves(Position.fromGameState(gameState), row, col);
+	}
+
+	public static List<int[]> computeLegalMoves(Position pos, int row, int col) {
+		// adapter for callers that still want {row, col} targets
+		MoveList moves = BUFFER.get();
+		moves.clear();
+		generateLegalMoves(pos, square(row, col), moves);
+		return moves.toTargets();
+	}
+
+	public static void generateLegalMoves(Position pos, int from, MoveList moves) {
+		// appends the legal moves of the piece on from, promotions are a single move with no piece picked
+		int piece = pos.pieceAt(from);
+		if (piece == EMPTY) return;
+
+		int colour = colourOf(piece);
+		int king = pos.kingSquare(colour);
+		if (king < 0) {
+			generateBySimulation(pos, from, moves);
+			return;
 		}
-		
-		if (isKingInCheck(board, colour)) {
-			return; // king is in check, can't castle
+		long checkers = attackersOf(pos, king, colour ^ 1, pos.occupied());
+		generateLegalMoves(pos, from, moves, king, checkers, pinnedPieces(pos, king, colour));
+	}
+
+	public static void generateLegalMoves(Position pos, MoveList moves) {
+		// every legal move for the side to move, with promotions expanded to one move per piece
+		// checkers and pins are worked out once for the whole position
+		int colour = pos.getSideToMove();
+		int king = pos.kingSquare(colour);
+		long checkers = king < 0 ? 0 : attackersOf(pos, king, colour ^ 1, pos.occupied());
+		long pinned = king < 0 ? 0 : pinnedPieces(pos, king, colour);
+
+		// in double check only the king can move
+		long own = Long.bitCount(checkers) > 1 ? bit(king) : pos.colour(colour);
+		while (own != 0) {
+			int sq = Long.numberOfTrailingZeros(own);
+			own &= own - 1;
+
+			int start = moves.size();
+			if (king < 0) {
+				generateBySimulation(pos, sq, moves);
+			} else {
+				generateLegalMoves(pos, sq, moves, king, checkers, pinned);
+			}
+			if (typeOf(pos.pieceAt(sq)) != PAWN) continue;
+
+			int end = moves.size();
+			for (int i = start; i < end; i++) {
+				int move = moves.get(i);
+				if (!MoveList.is(move, PROMOTION)) continue;
+				moves.set(i, withPromotion(move, QUEEN));
+				moves.add(withPromotion(move, ROOK));
+				moves.add(withPromotion(move, BISHOP));
+				moves.add(withPromotion(move, KNIGHT));
+			}
 		}
-		
-		// king side castling
-		boolean canKingSideCastle = isWhite ? gameState.isWhiteKingSideCastle() : gameState.isBlackKingSideCastle();
-		
-		if (canKingSideCastle) {
-			int rookCol = 7;
-			// f file and g file (5 and 6) in between king and rook, gotta check that they're empty and not under attack
-			if (board.get(homeRow, 5) == null && board.get(homeRow, 6) == null) {
-				// check that the rook is where it should be
-				String rook = board.get(homeRow, rookCol);
-				if (rook != null && colourOf(rook) == colour) {
-					if (!isSquareAttacked(board, homeRow, 4, enemyOf(colour)) &&
-			            !isSquareAttacked(board, homeRow, 5, enemyOf(colour)) &&
-			            !isSquareAttacked(board, homeRow, 6, enemyOf(colour))) {
-	
-			            // castling move = king goes to g-file (6)
-			            moves.add(new int[]{homeRow, 6});
-			        }
+	}
+
+	private static void generateLegalMoves(Position pos, int from, MoveList moves, int king, long checkers, long pinned) {
+		int colour = colourOf(pos.pieceAt(from));
+		int start = moves.size();
+
+		if (from == king) {
+			// the king can't step onto an attacked square, looked at with the king lifted off
+			// so it can't retreat along the line it's being checked on
+			generatePseudoMoves(pos, from, moves);
+			long withoutKing = pos.occupied() ^ bit(king);
+			int kept = start;
+			for (int i = start; i < moves.size(); i++) {
+				int move = moves.get(i);
+				if (attackersOf(pos, to(move), colour ^ 1, withoutKing) == 0) {
+					moves.set(kept++, move);
 				}
 			}
+			moves.truncate(kept);
+
+			// castling is only generated when the whole path is safe (and never out of check)
+			generateCastlingMoves(pos, from, colour, moves);
+			return;
 		}
-		
-		// queen side castling
-		boolean canQueenSide = isWhite
-		            ? gameState.isWhiteQueenSideCastle()
-		            : gameState.isBlackQueenSideCastle();
-
-		if (canQueenSide) {
-			int rookCol = 0;
-		    // squares between: d (3), c (2), b (1)
-		    if (board.get(homeRow, 3) == null &&
-		        board.get(homeRow, 2) == null &&
-		        board.get(homeRow, 1) == null) {
-		    	
-		    	String rook = board.get(homeRow, rookCol);
-		    	if (rook != null && colourOf(rook) == colour) {
-			        // squares king passes: e (4), d (3), c (2)
-			        if (!isSquareAttacked(board, homeRow, 4, enemyOf(colour)) &&
-			            !isSquareAttacked(board, homeRow, 3, enemyOf(colour)) &&
-			            !isSquareAttacked(board, homeRow, 2, enemyOf(colour))) {
-	
-			            // castling move = king goes to c-file (2)
-			            moves.add(new int[]{homeRow, 2});
-			        }
-		    	}
-		    }
+
+		// in double check only the king can move
+		if (Long.bitCount(checkers) > 1) return;
+
+		// in check a move has to take the checker or block it, a pinned piece has to stay on its pin line
+		long allowed = checkers == 0 ? ~0L : checkers | between(king, Long.numberOfTrailingZeros(checkers));
+		if ((pinned & bit(from)) != 0) {
+			allowed &= line(king, from);
 		}
+
+		generatePseudoMoves(pos, from, moves);
+		int kept = start;
+		for (int i = start; i < moves.size(); i++) {
+			int move = moves.get(i);
+			// en passant lifts two pawns off a line at once, so it's the one move that's still simulated
+			boolean legal = MoveList.is(move, EN_PASSANT) ? isLegal(pos, from, to(move), colour) : (allowed & bit(to(move))) != 0;
+			if (legal) {
+				moves.set(kept++, move);
+			}
+		}
+		moves.truncate(kept);
 	}
-	
-	private static char enemyOf(char color) {
-	    return color == 'w' ? 'b' : 'w';
+
+	private static long pinnedPieces(Position pos, int king, int colour) {
+		// enemy sliders that would hit the king on an empty board, with exactly one of our pieces in between
+		int enemy = colour ^ 1;
+		long queens = pos.pieces(enemy, QUEEN);
+		long snipers = (bishopAttacks(king, 0) & (pos.pieces(enemy, BISHOP) | queens))
+				| (rookAttacks(king, 0) & (pos.pieces(enemy, ROOK) | queens));
+
+		long pinned = 0;
+		long occupied = pos.occupied();
+		while (snipers != 0) {
+			int sniper = Long.numberOfTrailingZeros(snipers);
+			snipers &= snipers - 1;
+			long blockers = between(king, sniper) & occupied;
+			if (blockers != 0 && (blockers & (blockers - 1)) == 0) {
+				pinned |= blockers & pos.colour(colour);
+			}
+		}
+		return pinned;
+	}
+
+	private static void generateBySimulation(Position pos, int from, MoveList moves) {
+		// no king to pin against, only in hand built positions: make each move and look
+		int colour = colourOf(pos.pieceAt(from));
+		int start = moves.size();
+		generatePseudoMoves(pos, from, moves);
+
+		int kept = start;
+		for (int i = start; i < moves.size(); i++) {
+			int move = moves.get(i);
+			if (isLegal(pos, from, to(move), colour)) {
+				moves.set(kept++, move);
+			}
+		}
+		moves.truncate(kept);
+	}
+
+	public static long[] legalTargets(Position pos) {
+		// every legal move for the side to move, as a bitboard of targets per from square
+		MoveList moves = BUFFER.get();
+		moves.clear();
+		generateLegalMoves(pos, moves);
+
+		long[] targets = new long[64];
+		for (int i = 0; i < moves.size(); i++) {
+			targets[from(moves.get(i))] |= bit(to(moves.get(i)));
+		}
+		return targets;
 	}
-	
+
+	public static long[] legalTargets(GameState gameState) {
+		// from the game's cache when it has one, generated and stored there otherwise
+		LegalMoveCache cache = gameState.getLegalMoveCache();
+		if (cache == null) {
+			return legalTargets(Position.fromGameState(gameState)); // not a running game, its key can't be trusted
+		}
+
+		long key = gameState.getPositionKey();
+		long[] targets = cache.get(key);
+		if (targets == null) {
+			targets = legalTargets(Position.fromGameState(gameState));
+			cache.put(key, targets);
+		}
+		return targets;
+	}
+
 	public static Board applyMoveIfLegal(GameState gameState, int fromRow, int fromCol, int toRow, int toCol, char currentColour) {
 		Board board = gameState.getBoard();
 		String piece = board.get(fromRow, fromCol);
-        if (piece == null || colourOf(piece) != currentColour) return null;
-
-        // compute legal moves and check if this particular move is in that list
-        List<int[]> legalMoves = computeLegalMoves(gameState, fromRow, fromCol);
-        boolean isLegal = legalMoves.stream()
-                .anyMatch(mv -> mv[0] == toRow && mv[1] == toCol);
-        
-        // if it isn't legal just return null
-        if (!isLegal) return null;
-
-        Board copy = board.copy();
-        boolean isEnPassant = isEnPassantMove(gameState, fromRow, fromCol, toRow, toCol);
-        copy.move(fromRow, fromCol, toRow, toCol);
-        if (isEnPassant) {
-        	removeEnPassantPawn(copy, currentColour, toRow, toCol);
-        }
-        
-        return copy;
-	}
-	
-	private static boolean isEnPassantMove(GameState gameState, int fromRow, int fromCol, int toRow, int toCol) {
-		Board board = gameState.getBoard();
-		String piece = board.get(fromRow, fromCol);
-		if (piece == null || typeOf(piece) != 'p') {
-            return false;
-        }
-
-        if (gameState.getEnPassantRow() != toRow || gameState.getEnPassantCol() != toCol) {
-            return false;
-        }
+		if (piece == null || piece.charAt(0) != currentColour) return null;
 
-        if (board.get(toRow, toCol) != EMPTY) {
-            return false;
-        }
+		int from = square(fromRow, fromCol);
+		int to = square(toRow, toCol);
+		char sideToMove = gameState.getTurn().equals("WHITE") ? 'w' : 'b';
+		if (currentColour == sideToMove) {
+			// the legal set is the side to move's, so checking the move is a bit test
+			if ((legalTargets(gameState)[from] & bit(to)) == 0) return null;
+		} else {
+			// out of turn, only the one piece is generated
+			Position pos = Position.fromGameState(gameState);
+			MoveList moves = BUFFER.get();
+			moves.clear();
+			generateLegalMoves(pos, from, moves);
+			if (moves.find(from, to) < 0) return null;
+		}
 
-        int dir = colourOf(piece) == 'w' ? -1 : 1;
-        return (toRow - fromRow) == dir && Math.abs(fromCol - toCol) == 1;
-	}
-	
-	private static void removeEnPassantPawn(Board board, char colour, int toRow, int toCol) {
-		int capturedRow = toRow + (colour == 'w' ? 1 : -1);
-        board.set(capturedRow, toCol, null);
+		// castling rook and promotion are left to GameService
+		Board newBoard = board.copy();
+		if (piece.charAt(1) == 'p' && fromCol != toCol && board.get(toRow, toCol) == null) {
+			// diagonal onto an empty square is en passant, the pawn taken is beside us
+			newBoard.set(fromRow, toCol, null);
+		}
+		newBoard.move(fromRow, fromCol, toRow, toCol);
+		return newBoard;
 	}
-	
+
 	public static GameState.Status evaluateStatus(GameState gameState, char colourToMove) {
-		Board board = gameState.getBoard();
-		boolean inCheck = isKingInCheck(board, colourToMove);
-	    boolean hasMove = hasAnyLegalMove(gameState, colourToMove);
+		Position pos = Position.fromGameState(gameState);
+		int colour = colourOf(colourToMove);
+		boolean inCheck = isKingInCheck(pos, colour);
+	    boolean hasMove = hasAnyLegalMove(pos, colour);
 
 	    if (inCheck && !hasMove) return GameState.Status.CHECKMATE;
 	    if (!inCheck && !hasMove) return GameState.Status.STALEMATE;
-	    return GameState.Status.IN_PROGRESS;
+	    return drawStatus(gameState);
+	}
+
+	public static GameState.Status evaluateStatus(GameState gameState, char colourToMove, long[] legalTargets) {
+		// same answer from a legal set that's already been worked out, check only matters if it's empty
+		for (long targets : legalTargets) {
+			if (targets != 0) return drawStatus(gameState);
+		}
+		return isKingInCheck(gameState.getBoard(), colourToMove) ? GameState.Status.CHECKMATE : GameState.Status.STALEMATE;
+	}
+
+	private static GameState.Status drawStatus(GameState gameState) {
+		// drawn positions where the side to move still has a move, mate on the move that makes one still wins.
+		// there's no claiming, the game ends as soon as one comes up
+		if (isInsufficientMaterial(gameState.getBoard())) return GameState.Status.DRAW_INSUFFICIENT_MATERIAL;
+		if (gameState.getHalfmoveClock() >= 100) return GameState.Status.DRAW_FIFTY_MOVES;
+		if (gameState.getRepetitions().count(gameState.getPositionKey()) >= 3) return GameState.Status.DRAW_REPETITION;
+		return GameState.Status.IN_PROGRESS;
+	}
+
+	public static boolean isInsufficientMaterial(Board board) {
+		// neither side can ever mate: kings with at most one knight or bishop between them,
+		// or only bishops that all stand on the same colour of square
+		int minors = 0, knights = 0, bishopSquares = 0;
+		for (int row = 0; row < 8; row++) {
+			for (int col = 0; col < 8; col++) {
+				String piece = board.get(row, col);
+				if (piece == null) continue;
+				char type = piece.charAt(1);
+				if (type == 'p' || type == 'r' || type == 'q') return false;
+				if (type == 'n') {
+					minors++;
+					knights++;
+				} else if (type == 'b') {
+					minors++;
+					bishopSquares |= 1 << ((row + col) & 1);
+				}
+			}
+		}
+		return minors <= 1 || (knights == 0 && bishopSquares != 3);
 	}
 }
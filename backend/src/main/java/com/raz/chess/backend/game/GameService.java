@@ -1,38 +1,263 @@
 package com.raz.chess.backend.lobby;
 
-import java.util.Random;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.springframework.stereotype.Service;
 
+import jakarta.annotation.PostConstruct;
+
 @Service
 public class GameService {
-	private GameState currentGame;
+	// every running game by id. each game is its own lock, so moves in different games never wait on each other
+	private final Map<String, GameState> games = new ConcurrentHashMap<>();
+	private final MoveJournal journal;
+	private final GameSnapshots snapshots;
+	private final GameArchive archive;
+	
+	// moves journalled since the last snapshot, the snapshot itself is taken on its own thread
+	private final AtomicInteger movesSinceSnapshot = new AtomicInteger();
+	private final ExecutorService snapshotter = Executors.newSingleThreadExecutor(r -> {
+		Thread t = new Thread(r, "game-snapshots");
+		t.setDaemon(true);
+		return t;
+	});
+	
+	public GameService(MoveJournal journal, GameSnapshots snapshots, GameArchive archive) {
+		this.journal = journal;
+		this.snapshots = snapshots;
+		this.archive = archive;
+	}
+	
+	@PostConstruct
+	public void recover() throws IOException {
+		// rebuild the games that were running when the server last stopped, before any client can reach them
+		// the latest snapshot gives most of it, then the journal written since goes back through applyMove
+		// with the mystery box copied rather than rolled. moves the snapshot already has are skipped by sequence
+		GameSnapshots.Loaded snapshot = snapshots.load();
+		for (GameState game : snapshot.getGames()) {
+			game.setPositionKey(Zobrist.keyOf(game, false));
+			game.setLegalMoveCache(new LegalMoveCache());
+			games.put(game.getGameId(), game);
+		}
+		
+		int[] moves = new int[1];
+		int records = journal.replay(snapshot.getSegment(), new MoveJournal.Listener() {
+			@Override
+			public void onStart(String gameId, String white, String black, int movesUntilMysteryBox, String startFen) {
+				if (games.containsKey(gameId)) return;
+				GameState game = newGame(gameId, white, black, startFen);
+				game.setMovesUntilMysteryBox(movesUntilMysteryBox);
+				games.put(gameId, game);
+			}
+			
+			@Override
+			public void onMove(String gameId, long seq, int from, int to, char promotion, int boxSquare, int movesUntilMysteryBox) {
+				GameState game = games.get(gameId);
+				if (game == null || seq != game.getSequence() + 1) return;
+				
+				Move move = new Move(Position.rowOf(from), Position.colOf(from), Position.rowOf(to), Position.colOf(to),
+						game.getTurn().equals("WHITE") ? game.getWhitePlayer() : game.getBlackPlayer());
+				move.setGameId(gameId);
+				move.setPromotion(promotion == 0 ? null : String.valueOf(promotion));
+				if (applyMove(game, move) == null) {
+					System.out.println("Journal move " + seq + " of " + gameId + " no longer applies, game left as it was");
+					return;
+				}
+				game.setMysteryBoxRow(boxSquare < 0 ? -1 : Position.rowOf(boxSquare));
+				game.setMysteryBoxCol(boxSquare < 0 ? -1 : Position.colOf(boxSquare));
+				game.setMovesUntilMysteryBox(movesUntilMysteryBox);
+				moves[0]++;
+			}
+			
+			@Override
+			public void onEnd(String gameId) {
+				games.remove(gameId);
+			}
+		});
+		// a game that ended just before the stop may not have reached the archive, and goes once it has
+		for (GameState game : games.values()) {
+			if (game.getStatus() != GameState.Status.IN_PROGRESS) archive.appendIfMissing(game, () -> removeGame(game.getGameId()));
+		}
+		if (!games.isEmpty()) {
+			System.out.println("Recovered " + games.size() + " games, " + snapshot.getGames().size() + " from the snapshot and "
+					+ records + " journal records after it");
+		}
+		
+		// the replayed tail counts towards the next snapshot, so it never builds up over restarts
+		if (moves[0] > 0 && movesSinceSnapshot.addAndGet(moves[0]) >= snapshots.getInterval()) {
+			snapshotter.execute(this::snapshot);
+		}
+	}
+	
+	private void snapshot() {
+		// start a new journal segment, copy every game, then everything before the segment can go
+		// a move made while this runs is in the new segment and maybe the snapshot too, replay skips it then
+		movesSinceSnapshot.set(0);
+		try {
+			long segment = journal.rotate();
+			List<byte[]> states = new ArrayList<>(games.size());
+			List<int[]> histories = new ArrayList<>(games.size());
+			List<String> startFens = new ArrayList<>(games.size());
+			List<Integer> halfmoveClocks = new ArrayList<>(games.size());
+			List<long[]> repetitions = new ArrayList<>(games.size());
+			for (GameState game : games.values()) {
+				synchronized (game) {
+					// a game the binary format can't hold shouldn't cost every other game its snapshot, it's still
+					// played on but won't come back after a restart
+					byte[] state;
+					try {
+						state = BinaryCodec.encodeState(game);
+					} catch (RuntimeException e) {
+						System.out.println("Snapshot left out game " + game.getGameId() + ": " + e.getMessage());
+						continue;
+					}
+					states.add(state);
+					histories.add(game.getHistory().toArray());
+					startFens.add(game.getStartFen());
+					halfmoveClocks.add(game.getHalfmoveClock());
+					repetitions.add(game.getRepetitions().toArray());
+				}
+			}
+			snapshots.write(segment, states, histories, startFens, halfmoveClocks, repetitions);
+			journal.deleteBefore(segment);
+		} catch (IOException e) {
+			System.out.println("Snapshot failed, the journal is kept: " + e.getMessage());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	public GameState startGame(LobbyState lobby) {
+		return startGame(lobby.getPlayer1(), lobby.getPlayer2(), lobby.getFen());
+	}
+	
+	public GameState startGame(String white, String black, String fen) {
+		// fen is the position to start from, null or blank for the usual one. a bad FEN throws IllegalArgumentException
+		GameState game = newGame(UUID.randomUUID().toString(), white, black, fen == null || fen.isBlank() ? null : fen);
+		resetMysteryBoxTime(game);
+		
+		// a position set up with no moves left is over before it starts
+		char toMove = game.getTurn().equals("WHITE") ? 'w' : 'b';
+		game.setStatus(GameRules.evaluateStatus(game, toMove, GameRules.legalTargets(game)));
+		
+		games.put(game.getGameId(), game);
+		journal.appendStart(game);
+		if (game.getStatus() != GameState.Status.IN_PROGRESS) archive.append(game, () -> removeGame(game.getGameId()));
+		return game;
+	}
+	
+	private GameState newGame(String gameId, String white, String black, String startFen) {
+		GameState game = startFen == null
+				? new GameState(white, black, GameState.Status.IN_PROGRESS, "WHITE", new Board())
+				: Fen.toGameState(startFen);
+		game.setWhitePlayer(white);
+		game.setBlackPlayer(black);
+		game.setGameId(gameId);
+		game.setPositionKey(Zobrist.keyOf(game, false));
+		game.getRepetitions().add(game.getPositionKey());
+		game.setLegalMoveCache(new LegalMoveCache());
+		return game;
+	}
+	
+	public GameState getGame(String gameId) {
+		return gameId == null ? null : games.get(gameId);
+	}
+	
+	public GameState removeGame(String gameId) {
+		// the END record means replay drops the game too, a finished one is only read from the archive after this
+		GameState game = gameId == null ? null : games.remove(gameId);
+		if (game != null) journal.appendEnd(gameId);
+		return game;
+	}
+	
+	public void abandonGame(String gameId) {
+		// nobody is left to play it. a game that's over is already on its way out through the archive
+		GameState game = getGame(gameId);
+		if (game == null) return;
+		synchronized (game) {
+			if (game.getStatus() == GameState.Status.IN_PROGRESS) removeGame(gameId);
+		}
+	}
+	
+	public Collection<GameState> getGames() {
+		return games.values();
+	}
 	
-	public synchronized GameState startGame(LobbyState lobby) {
-		String white = lobby.getPlayer1();
-		String black = lobby.getPlayer2();
+	public int getGameCount() {
+		return games.size();
+	}
+	
+	public LegalMoves getLegalMoves(String gameId) {
+		// every legal move in the current position, from the game's cache
+		GameState game = getGame(gameId);
+		if (game == null) return null;
 		
-		currentGame = new GameState(white, black, GameState.Status.IN_PROGRESS, "WHITE", new Board());
-		resetMysteryBoxTime();
+		synchronized (game) {
+			long[] targets = GameRules.legalTargets(game);
+			List<int[]> moves = new ArrayList<>();
+			for (int from = 0; from < 64; from++) {
+				long bb = targets[from];
+				while (bb != 0) {
+					int to = Long.numberOfTrailingZeros(bb);
+					bb &= bb - 1;
+					moves.add(new int[]{Position.rowOf(from), Position.colOf(from), Position.rowOf(to), Position.colOf(to)});
+				}
+			}
+			return new LegalMoves(gameId, game.getSequence(), moves);
+		}
+	}
+	
+	public Advantage getAdvantage(String gameId) {
+		// static evaluation of the current position, white's side
+		GameState game = getGame(gameId);
+		if (game == null) return null;
 		
-		return currentGame;
+		synchronized (game) {
+			return new Advantage(gameId, game.getSequence(), Evaluation.evaluate(game));
+		}
 	}
 	
-	public synchronized GameState getCurrentGame() {
-		return currentGame;
+	public MoveDelta applyMove(Move move) {
+		// route the move to its game and hold only that game's lock
+		// returns just what changed, the full state stays available through getGame
+		GameState game = getGame(move.getGameId());
+		if (game == null) return null;
+		
+		MoveDelta delta;
+		synchronized (game) {
+			delta = applyMove(game, move);
+			// queued for the journal's next group commit, the move doesn't wait for the disk
+			if (delta != null) journal.appendMove(game, move);
+			// and a game that just ended goes to the archive the same way, then out of memory once it's there
+			if (delta != null && delta.getStatus() != null) archive.append(game, () -> removeGame(game.getGameId()));
+		}
+		if (delta != null && snapshots.isEnabled() && movesSinceSnapshot.incrementAndGet() == snapshots.getInterval()) {
+			snapshotter.execute(this::snapshot);
+		}
+		return delta;
 	}
 	
-	public synchronized GameState applyMove(Move move) {
-		// check that we have a game and it is in progress
-		if (currentGame == null) return null;
-		if (currentGame.getStatus() != GameState.Status.IN_PROGRESS) return null;
+	private MoveDelta applyMove(GameState game, Move move) {
+		// check that the game is in progress
+		if (game.getStatus() != GameState.Status.IN_PROGRESS) return null;
 		
 		// check if it's the right player's turn
 		String player = move.getPlayer();
-		String expectedPlayer = currentGame.getTurn().equals("WHITE") ? currentGame.getWhitePlayer() : currentGame.getBlackPlayer();
+		String expectedPlayer = game.getTurn().equals("WHITE") ? game.getWhitePlayer() : game.getBlackPlayer();
 		if (!expectedPlayer.equals(player)) return null;
 		
-		Board board = currentGame.getBoard();
+		Board board = game.getBoard();
 		int fromRow = move.getFromRow();
 		int fromCol = move.getFromCol();
 		int toRow = move.getToRow();
@@ -46,13 +271,30 @@ public class GameService {
 		char type = piece.charAt(1);
 		
 		// move validation. get the current colour to move and apply the new move if legal
-		char colourToMove = currentGame.getTurn().equals("WHITE") ? 'w' : 'b';
-		Board newBoard = GameRules.applyMoveIfLegal(currentGame, fromRow, fromCol, toRow, toCol, colourToMove);
+		char colourToMove = game.getTurn().equals("WHITE") ? 'w' : 'b';
+		Board newBoard = GameRules.applyMoveIfLegal(game, fromRow, fromCol, toRow, toCol, colourToMove);
 		
 		if (newBoard == null) {
 			return null;  // illegal move
 		}
 		
+		// snapshot what the position key depends on so we can XOR in just the differences at the end
+		int oldRights = Position.castlingRightsOf(game);
+		int oldEnPassant = Position.enPassantOf(game);
+		String captured = board.get(toRow, toCol);
+		int capturedSquare = Position.square(toRow, toCol);
+		if (captured == null && type == 'p' && fromCol != toCol) {
+			// en passant, the captured pawn is beside us
+			capturedSquare = Position.square(fromRow, toCol);
+			captured = board.get(fromRow, toCol);
+		}
+		
+		// and what the delta sent to clients compares against
+		int oldBoxRow = game.getMysteryBoxRow();
+		int oldBoxCol = game.getMysteryBoxCol();
+		String oldWhitePowerUp = game.getWhitePlayerPowerUp();
+		String oldBlackPowerUp = game.getBlackPlayerPowerUp();
+		
 		// handle pawn promotion if applicable
         if (type == 'p') {
         	boolean reachedEnd = (colour == 'w' && toRow == 0) || (colour == 'b' && toRow == 7);
@@ -67,12 +309,12 @@ public class GameService {
         }
         
         // update en passant square
-        currentGame.setEnPassantRow(-1);
-        currentGame.setEnPassantCol(-1);
+        game.setEnPassantRow(-1);
+        game.setEnPassantCol(-1);
         if (type == 'p' && Math.abs(fromRow - toRow) == 2) {
         	int dir = (colour == 'w') ? -1 : 1;
-        	currentGame.setEnPassantRow(fromRow + dir);
-        	currentGame.setEnPassantCol(fromCol);
+        	game.setEnPassantRow(fromRow + dir);
+        	game.setEnPassantCol(fromCol);
         }
 		
 		// check if it was a king or rook move
@@ -92,71 +334,157 @@ public class GameService {
 			
 			// update castling rights
 			if (colour == 'w') {
-				currentGame.setWhiteKingSideCastle(false);
-				currentGame.setWhiteQueenSideCastle(false);
+				game.setWhiteKingSideCastle(false);
+				game.setWhiteQueenSideCastle(false);
 			} else {
-				currentGame.setBlackKingSideCastle(false);
-				currentGame.setBlackQueenSideCastle(false);
+				game.setBlackKingSideCastle(false);
+				game.setBlackQueenSideCastle(false);
 			}
 		} else if (isKingMove) {
 			// normal king move, turn off castling
 			if (colour == 'w') {
-				currentGame.setWhiteKingSideCastle(false);
-				currentGame.setWhiteQueenSideCastle(false);
+				game.setWhiteKingSideCastle(false);
+				game.setWhiteQueenSideCastle(false);
 			} else {
-				currentGame.setBlackKingSideCastle(false);
-				currentGame.setBlackQueenSideCastle(false);
+				game.setBlackKingSideCastle(false);
+				game.setBlackQueenSideCastle(false);
 			}
 		} else if (isRookMove) {
 			// rook moved, depending which one we must update castling rights
 			if (colour == 'w') {
-				if (fromRow == 7 && fromCol == 7) currentGame.setWhiteKingSideCastle(false);
-				if (fromRow == 7 && fromCol == 0) currentGame.setWhiteQueenSideCastle(false);
+				if (fromRow == 7 && fromCol == 7) game.setWhiteKingSideCastle(false);
+				if (fromRow == 7 && fromCol == 0) game.setWhiteQueenSideCastle(false);
 			} else {
-				if (fromRow == 0 && fromCol == 7) currentGame.setBlackKingSideCastle(false);
-				if (fromRow == 0 && fromCol == 0) currentGame.setBlackQueenSideCastle(false);
+				if (fromRow == 0 && fromCol == 7) game.setBlackKingSideCastle(false);
+				if (fromRow == 0 && fromCol == 0) game.setBlackQueenSideCastle(false);
 			}
 		}
 		
 		// check if the piece passes through a mystery box. if it does, award the player
-		int mysteryBoxRow = currentGame.getMysteryBoxRow();
-		int mysteryBoxCol = currentGame.getMysteryBoxCol();
+		int mysteryBoxRow = game.getMysteryBoxRow();
+		int mysteryBoxCol = game.getMysteryBoxCol();
 		if (passedThroughMysteryBox(fromRow, fromCol, toRow, toCol, mysteryBoxRow, mysteryBoxCol)) {
-			currentGame.setMysteryBoxRow(-1);
-			currentGame.setMysteryBoxCol(-1);
+			game.setMysteryBoxRow(-1);
+			game.setMysteryBoxCol(-1);
 			
-			resetMysteryBoxTime();
+			resetMysteryBoxTime(game);
 			
 			if (colour == 'w') {
-				currentGame.setWhitePlayerPowerUp("Test Power");
+				game.setWhitePlayerPowerUp("Test Power");
 			} else {
-				currentGame.setBlackPlayerPowerUp("Test Power");
+				game.setBlackPlayerPowerUp("Test Power");
 			}
 		}
 		
 		// check if we need to spawn mystery box
-		int movesUntilMysteryBox = currentGame.getMovesUntilMysteryBox();
+		int movesUntilMysteryBox = game.getMovesUntilMysteryBox();
 		if (movesUntilMysteryBox <= 0 && mysteryBoxRow == -1 && mysteryBoxCol == -1) {
-			spawnMysteryBox(board);
+			spawnMysteryBox(game, board);
 		}
 		
 		// decrease counter by 1
-		currentGame.setMovesUntilMysteryBox(movesUntilMysteryBox - 1);
+		game.setMovesUntilMysteryBox(movesUntilMysteryBox - 1);
 		
 		// set the board of the current game to the new board
-		currentGame.setBoard(newBoard);
+		game.setBoard(newBoard);
 		
 		// change turn
-		currentGame.setTurn(currentGame.getTurn().equals("WHITE") ? "BLACK" : "WHITE");
+		game.setTurn(game.getTurn().equals("WHITE") ? "BLACK" : "WHITE");
+		
+		updatePositionKey(game, piece, captured, capturedSquare, move, board, newBoard, oldRights, oldEnPassant);
+		
+		// a pawn move or capture can't be undone, so no earlier position can come round again
+		if (type == 'p' || captured != null) {
+			game.setHalfmoveClock(0);
+			game.getRepetitions().clear();
+		} else {
+			game.setHalfmoveClock(game.getHalfmoveClock() + 1);
+		}
+		game.getRepetitions().add(game.getPositionKey());
+		
+		// kept for the archive, which writes the game out as PGN once it's over
+		String arrivedPiece = newBoard.get(toRow, toCol);
+		int promotionType = piece.equals(arrivedPiece) ? 0 : Position.typeOf(Position.pieceOf(arrivedPiece));
+		game.getHistory().add(MoveList.withPromotion(MoveList.encode(Position.square(fromRow, fromCol), Position.square(toRow, toCol), 0), promotionType));
 		
 		// update game status
-		char nextColor = currentGame.getTurn().equals("WHITE") ? 'w' : 'b';
-        GameState.Status status = GameRules.evaluateStatus(currentGame, nextColor);
-        currentGame.setStatus(status);
+		// the next side's legal moves are worked out in full once here, the status comes from them
+		// and the next move's validation and any legal move queries are then cache hits
+		char nextColor = game.getTurn().equals("WHITE") ? 'w' : 'b';
+        GameState.Status status = GameRules.evaluateStatus(game, nextColor, GameRules.legalTargets(game));
+        game.setStatus(status);
+        game.setSequence(game.getSequence() + 1);
+		
+        // build the delta, only fields that changed are filled in
+        MoveDelta delta = new MoveDelta(game.getGameId(), game.getSequence(), fromRow, fromCol, toRow, toCol);
+        if (captured != null) {
+        	delta.setCaptured(captured);
+        	if (capturedSquare != Position.square(toRow, toCol)) {
+        		delta.setCapturedRow(Position.rowOf(capturedSquare));
+        		delta.setCapturedCol(Position.colOf(capturedSquare));
+        	}
+        }
+        if (type == 'k' && Math.abs(fromCol - toCol) == 2) {
+        	delta.setRookFromCol(toCol == 6 ? 7 : 0);
+        	delta.setRookToCol(toCol == 6 ? 5 : 3);
+        }
+        String arrived = newBoard.get(toRow, toCol);
+        if (!piece.equals(arrived)) {
+        	delta.setPromotion(arrived);
+        }
+        if (status != GameState.Status.IN_PROGRESS) {
+        	delta.setStatus(status);
+        }
+        int newRights = Position.castlingRightsOf(game);
+        if (newRights != oldRights) {
+        	delta.setCastling(newRights);
+        }
+        if (Position.enPassantOf(game) != oldEnPassant) {
+        	delta.setEnPassantRow(game.getEnPassantRow());
+        	delta.setEnPassantCol(game.getEnPassantCol());
+        }
+        if (game.getMysteryBoxRow() != oldBoxRow || game.getMysteryBoxCol() != oldBoxCol) {
+        	delta.setMysteryBoxRow(game.getMysteryBoxRow());
+        	delta.setMysteryBoxCol(game.getMysteryBoxCol());
+        }
+        if (!Objects.equals(oldWhitePowerUp, game.getWhitePlayerPowerUp())) {
+        	delta.setWhitePlayerPowerUp(game.getWhitePlayerPowerUp());
+        }
+        if (!Objects.equals(oldBlackPowerUp, game.getBlackPlayerPowerUp())) {
+        	delta.setBlackPlayerPowerUp(game.getBlackPlayerPowerUp());
+        }
 		
-		return currentGame;
+		return delta;
 	}
 	
+	 private void updatePositionKey(GameState game, String piece, String captured, int capturedSquare, Move move, Board oldBoard, Board newBoard, int oldRights, int oldEnPassant) {
+		// incremental zobrist update, a handful of XORs instead of rehashing the grid
+		int from = Position.square(move.getFromRow(), move.getFromCol());
+		int to = Position.square(move.getToRow(), move.getToCol());
+		long key = game.getPositionKey();
+		
+		// the piece leaves from, and whatever is on to now (could be a promoted piece) arrives
+		key ^= Zobrist.piece(Position.pieceOf(piece), from);
+		key ^= Zobrist.piece(Position.pieceOf(newBoard.get(move.getToRow(), move.getToCol())), to);
+		if (captured != null) {
+			key ^= Zobrist.piece(Position.pieceOf(captured), capturedSquare);
+		}
+		
+		// castling also moves the rook
+		if (piece.charAt(1) == 'k' && Math.abs(move.getFromCol() - move.getToCol()) == 2) {
+			int row = move.getFromRow();
+			int rookFrom = Position.square(row, move.getToCol() == 6 ? 7 : 0);
+			int rookTo = Position.square(row, move.getToCol() == 6 ? 5 : 3);
+			int rook = Position.piece(Position.colourOf(piece.charAt(0)), Position.ROOK);
+			key ^= Zobrist.piece(rook, rookFrom) ^ Zobrist.piece(rook, rookTo);
+		}
+		
+		key ^= Zobrist.castling(oldRights) ^ Zobrist.castling(Position.castlingRightsOf(game));
+		key ^= Zobrist.enPassant(oldEnPassant, oldBoard) ^ Zobrist.enPassant(Position.enPassantOf(game), newBoard);
+		key ^= Zobrist.sideToMove(Position.WHITE) ^ Zobrist.sideToMove(Position.BLACK);
+		game.setPositionKey(key);
+	 }
+	 
 	 private String validatePromotion(String promotion) {
          if (promotion == null || promotion.isBlank()) {
                  return "q";
@@ -170,54 +498,36 @@ public class GameService {
          return "q";
 	 }
 	 
-	 private void resetMysteryBoxTime() {
+	 private void resetMysteryBoxTime(GameState game) {
 		// reset counter for mystery box spawn
-		Random r = new Random();
 		int low = 3;
-		int high = 8;		
-		int result = r.nextInt(high-low) + low;
-		currentGame.setMovesUntilMysteryBox(result);
+		int high = 8;
+		int result = ThreadLocalRandom.current().nextInt(low, high);
+		game.setMovesUntilMysteryBox(result);
 	 }
 	 
-	 private void spawnMysteryBox(Board board) {
+	 private void spawnMysteryBox(GameState game, Board board) {
 		// get random square and spawn the box
-		int randRow = (int)(Math.random() * 8);
-		int randCol = (int)(Math.random() * 8);
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		int randRow = random.nextInt(8);
+		int randCol = random.nextInt(8);
 					
 		while (board.get(randRow, randCol) != null) {
-			randRow = (int)(Math.random() * 8);
-			randCol = (int)(Math.random() * 8);
+			randRow = random.nextInt(8);
+			randCol = random.nextInt(8);
 		}
 					
-		currentGame.setMysteryBoxRow(randRow);
-		currentGame.setMysteryBoxCol(randCol);
+		game.setMysteryBoxRow(randRow);
+		game.setMysteryBoxCol(randCol);
 	 }
 	 
 	 private boolean passedThroughMysteryBox(int fromRow, int fromCol, int toRow, int toCol, int boxRow, int boxCol) {
 		if (boxRow < 0 || boxCol < 0) return false;
 		
-		// direction of movement in row/col
-	    int dRow = Integer.compare(toRow, fromRow); // -1, 0, or 1
-	    int dCol = Integer.compare(toCol, fromCol); // -1, 0, or 1
-
-	    int r = fromRow;
-	    int c = fromCol;
-	    
-	    while (true) {
-	        // did we pass over the box?
-	        if (r == boxRow && c == boxCol) {
-	            return true;
-	        }
-
-	        // reached destination: stop
-	        if (r == toRow && c == toCol) {
-	            break;
-	        }
-
-	        r += dRow;
-	        c += dCol;
-	    }
-
-	    return false;
+		// the squares a move passes over are the ones between from and to on their shared line, plus where it lands
+		// knights don't share a line with their target, so they only pick the box up by landing on it
+		int to = Position.square(toRow, toCol);
+		long path = Attacks.between(Position.square(fromRow, fromCol), to) | Position.bit(to);
+		return (path & Position.bit(Position.square(boxRow, boxCol))) != 0;
 	 }
 }
@@ -0,0 +1,41 @@
+package com.raz.chess.backend.lobby;
+
+public class GameSetup {
+	// a game to start straight from a position: who plays which side and the FEN (blank for the usual start)
+	private String white;
+	private String black;
+	private String fen;
+
+	public GameSetup() {
+	}
+
+	public GameSetup(String white, String black, String fen) {
+		this.white = white;
+		this.black = black;
+		this.fen = fen;
+	}
+
+	public String getWhite() {
+		return white;
+	}
+
+	public void setWhite(String white) {
+		this.white = white;
+	}
+
+	public String getBlack() {
+		return black;
+	}
+
+	public void setBlack(String black) {
+		this.black = black;
+	}
+
+	public String getFen() {
+		return fen;
+	}
+
+	public void setFen(String fen) {
+		this.fen = fen;
+	}
+}
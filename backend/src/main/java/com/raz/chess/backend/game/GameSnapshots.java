@@ -0,0 +1,184 @@
+package com.raz.chess.backend.lobby;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+@Component
+public class GameSnapshots {
+	// every running game's state in one file, so a restart only replays the journal written since
+	// snapshot-<segment>.bin holds everything journalled before that segment, the journal carries on from there
+	//
+	// file: magic (4) | segment (8) | game count (4) | per game: length (4) + BinaryCodec state, move count (4) + moves (4 each),
+	//       start FEN (short length + UTF-8, empty for the usual position), halfmove clock (4),
+	//       repetition key count (4) + keys (8 each) | crc32 of it all (4)
+	// moves and start FEN are what the archive needs once the game is over, the clock and keys are for the draw rules
+	// written to a temp file, forced, then renamed over, so a snapshot is either all there or not there at all
+
+	private static final int MAGIC = 0x43534E50; // "CSNP"
+	private static final String PREFIX = "snapshot-", SUFFIX = ".bin";
+
+	public static class Loaded {
+		private final long segment;
+		private final List<GameState> games;
+
+		public Loaded(long segment, List<GameState> games) {
+			this.segment = segment;
+			this.games = games;
+		}
+
+		public long getSegment() { return segment; }
+		public List<GameState> getGames() { return games; }
+	}
+
+	private final boolean enabled;
+	private final Path directory;
+	private final int interval;
+
+	public GameSnapshots(@Value("${chess.journal.enabled:true}") boolean enabled, @Value("${chess.journal.dir:journal}") String dir,
+			@Value("${chess.snapshot.interval:1000}") int interval) {
+		this.enabled = enabled;
+		this.directory = enabled ? Path.of(dir) : null;
+		this.interval = Math.max(1, interval);
+	}
+
+	public static GameSnapshots disabled() {
+		return new GameSnapshots(false, null, Integer.MAX_VALUE);
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public int getInterval() {
+		// accepted moves between snapshots, across all games
+		return interval;
+	}
+
+	public void write(long segment, List<byte[]> states, List<int[]> histories, List<String> startFens,
+			List<Integer> halfmoveClocks, List<long[]> repetitions) throws IOException {
+		if (!enabled) return;
+		List<byte[]> fens = new ArrayList<>(startFens.size());
+		int size = 16 + 4;
+		for (int i = 0; i < states.size(); i++) {
+			fens.add(startFens.get(i) == null ? new byte[0] : startFens.get(i).getBytes(StandardCharsets.UTF_8));
+			size += 4 + states.get(i).length + 4 + histories.get(i).length * 4 + 2 + fens.get(i).length
+					+ 4 + 4 + repetitions.get(i).length * 8;
+		}
+
+		ByteBuffer out = ByteBuffer.allocate(size);
+		out.putInt(MAGIC).putLong(segment).putInt(states.size());
+		for (int i = 0; i < states.size(); i++) {
+			out.putInt(states.get(i).length).put(states.get(i));
+			out.putInt(histories.get(i).length);
+			for (int move : histories.get(i)) {
+				out.putInt(move);
+			}
+			out.putShort((short) fens.get(i).length).put(fens.get(i));
+			out.putInt(halfmoveClocks.get(i));
+			out.putInt(repetitions.get(i).length);
+			for (long key : repetitions.get(i)) {
+				out.putLong(key);
+			}
+		}
+		CRC32 crc = new CRC32();
+		crc.update(out.array(), 0, out.position());
+		out.putInt((int) crc.getValue());
+		out.flip();
+
+		Files.createDirectories(directory);
+		Path temp = Files.createTempFile(directory, PREFIX, ".tmp");
+		try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+			while (out.hasRemaining()) {
+				channel.write(out);
+			}
+			channel.force(true);
+		}
+		Files.move(temp, file(segment), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		// older snapshots are covered by this one
+		for (long older : snapshots()) {
+			if (older < segment) Files.deleteIfExists(file(older));
+		}
+	}
+
+	public Loaded load() throws IOException {
+		// the newest snapshot that reads back whole, or nothing (segment 0) if there isn't one
+		if (!enabled || !Files.isDirectory(directory)) return new Loaded(0, List.of());
+
+		List<Long> snapshots = snapshots();
+		for (int i = snapshots.size() - 1; i >= 0; i--) {
+			Loaded loaded = read(snapshots.get(i));
+			if (loaded != null) return loaded;
+			System.out.println("Snapshot " + file(snapshots.get(i)).getFileName() + " is damaged, trying an older one");
+		}
+		return new Loaded(0, List.of());
+	}
+
+	private Loaded read(long segment) throws IOException {
+		ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file(segment)));
+		if (in.capacity() < 20 || in.getInt(0) != MAGIC) return null;
+
+		CRC32 crc = new CRC32();
+		crc.update(in.array(), 0, in.capacity() - 4);
+		if ((int) crc.getValue() != in.getInt(in.capacity() - 4)) return null;
+
+		in.position(4);
+		long stored = in.getLong();
+		int count = in.getInt();
+		List<GameState> games = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			byte[] state = new byte[in.getInt()];
+			in.get(state);
+			GameState game = BinaryCodec.decodeState(state);
+			int moves = in.getInt();
+			MoveList history = new MoveList(Math.max(64, moves));
+			for (int m = 0; m < moves; m++) {
+				history.add(in.getInt());
+			}
+			game.setHistory(history);
+			byte[] fen = new byte[in.getShort()];
+			in.get(fen);
+			game.setStartFen(fen.length == 0 ? null : new String(fen, StandardCharsets.UTF_8));
+			game.setHalfmoveClock(in.getInt());
+			int keys = in.getInt();
+			for (int k = 0; k < keys; k++) {
+				game.getRepetitions().add(in.getLong());
+			}
+			games.add(game);
+		}
+		return new Loaded(stored, games);
+	}
+
+	private List<Long> snapshots() throws IOException {
+		List<Long> snapshots = new ArrayList<>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+			for (Path f : files) {
+				String name = f.getFileName().toString();
+				try {
+					snapshots.add(Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())));
+				} catch (NumberFormatException e) {
+					// not one of ours
+				}
+			}
+		}
+		snapshots.sort(null);
+		return snapshots;
+	}
+
+	private Path file(long segment) {
+		return directory.resolve(String.format("%s%06d%s", PREFIX, segment, SUFFIX));
+	}
+}
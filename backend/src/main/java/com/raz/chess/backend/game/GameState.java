@@ -1,10 +1,14 @@
 package com.raz.chess.backend.lobby;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 public class GameState {
 	public enum Status {
-		WAITING_FOR_PLAYERS, IN_PROGRESS, FINISHED, CHECKMATE, STALEMATE
+		WAITING_FOR_PLAYERS, IN_PROGRESS, FINISHED, CHECKMATE, STALEMATE,
+		DRAW_REPETITION, DRAW_FIFTY_MOVES, DRAW_INSUFFICIENT_MATERIAL
 	}
 
+	private String gameId;
 	private String whitePlayer;
 	private String blackPlayer;
 	private Status status;
@@ -28,6 +32,32 @@ public class GameState {
 	private String whitePlayerPowerUp = null;
 	private String blackPlayerPowerUp = null;
 
+	// number of moves played, lets clients spot a missed delta and ask for a snapshot
+	private long sequence;
+
+	// plies since the last pawn move or capture, for the fifty-move rule
+	private int halfmoveClock;
+
+	// zobrist key of the position (pieces, turn, castling, en passant), server side only
+	@JsonIgnore
+	private long positionKey;
+
+	// legal moves of recent positions by positionKey, only set on games the GameService runs
+	@JsonIgnore
+	private LegalMoveCache legalMoveCache;
+
+	// every move played, packed like a MoveList without the flags, so a finished game can be archived
+	@JsonIgnore
+	private MoveList history = new MoveList(64);
+
+	// positionKey of every position since the last pawn move or capture, with how often each came up
+	@JsonIgnore
+	private RepetitionTable repetitions = new RepetitionTable();
+
+	// the FEN the game was set up from, null if it started from the usual position
+	@JsonIgnore
+	private String startFen;
+
 	public GameState() {
 	}
 
@@ -39,6 +69,35 @@ public class GameState {
 		this.board = board;
 	}
 
+	public GameState copy() {
+		// what clients see of the game as it is now, taken under the game's lock so it can be serialised after
+		// the server side fields (key, caches, history) aren't sent and aren't copied
+		GameState copy = new GameState(whitePlayer, blackPlayer, status, turn, board.copy());
+		copy.gameId = gameId;
+		copy.canCastleKingSideWhite = canCastleKingSideWhite;
+		copy.canCastleQueenSideWhite = canCastleQueenSideWhite;
+		copy.canCastleKingSideBlack = canCastleKingSideBlack;
+		copy.canCastleQueenSideBlack = canCastleQueenSideBlack;
+		copy.enPassantRow = enPassantRow;
+		copy.enPassantCol = enPassantCol;
+		copy.movesUntilMysteryBox = movesUntilMysteryBox;
+		copy.mysteryBoxRow = mysteryBoxRow;
+		copy.mysteryBoxCol = mysteryBoxCol;
+		copy.whitePlayerPowerUp = whitePlayerPowerUp;
+		copy.blackPlayerPowerUp = blackPlayerPowerUp;
+		copy.sequence = sequence;
+		copy.halfmoveClock = halfmoveClock;
+		return copy;
+	}
+
+	public String getGameId() {
+		return gameId;
+	}
+
+	public void setGameId(String gameId) {
+		this.gameId = gameId;
+	}
+
 	public String getWhitePlayer() {
 		return whitePlayer;
 	}
@@ -166,4 +225,65 @@ public class GameState {
 	public void setBlackPlayerPowerUp(String powerUp) {
 		this.blackPlayerPowerUp = powerUp;
 	}
+
+	public long getSequence() {
+		return sequence;
+	}
+
+	public void setSequence(long sequence) {
+		this.sequence = sequence;
+	}
+
+	public int getHalfmoveClock() {
+		return halfmoveClock;
+	}
+
+	public void setHalfmoveClock(int halfmoveClock) {
+		this.halfmoveClock = halfmoveClock;
+	}
+
+	@JsonIgnore
+	public long getPositionKey() {
+		return positionKey;
+	}
+
+	public void setPositionKey(long positionKey) {
+		this.positionKey = positionKey;
+	}
+
+	@JsonIgnore
+	public LegalMoveCache getLegalMoveCache() {
+		return legalMoveCache;
+	}
+
+	public void setLegalMoveCache(LegalMoveCache legalMoveCache) {
+		this.legalMoveCache = legalMoveCache;
+	}
+
+	@JsonIgnore
+	public MoveList getHistory() {
+		return history;
+	}
+
+	public void setHistory(MoveList history) {
+		this.history = history;
+	}
+
+	@JsonIgnore
+	public RepetitionTable getRepetitions() {
+		return repetitions;
+	}
+
+	public void setRepetitions(RepetitionTable repetitions) {
+		this.repetitions = repetitions;
+	}
+
+	@JsonIgnore
+	public String getStartFen() {
+		return startFen;
+	}
+
+	public void setStartFen(String startFen) {
+		this.startFen = startFen;
+	}
 }
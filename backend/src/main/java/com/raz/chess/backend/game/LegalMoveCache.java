@@ -0,0 +1,26 @@
+package com.raz.chess.backend.lobby;
+
+public class LegalMoveCache {
+	// legal moves of a game's last few positions, each as a bitboard of targets per from square
+	// keyed by position key, so checking a move is a scan of a few longs and a bit test
+	// a handful of slots is plenty, the current position is the one asked about again and again
+	private static final int SIZE = 4;
+
+	private final long[] keys = new long[SIZE];
+	private final long[][] targets = new long[SIZE][];
+	private int next;
+
+	public synchronized long[] get(long key) {
+		for (int i = 0; i < SIZE; i++) {
+			if (targets[i] != null && keys[i] == key) return targets[i];
+		}
+		return null;
+	}
+
+	public synchronized void put(long key, long[] legalTargets) {
+		// oldest slot goes, the arrays are never changed once in here
+		keys[next] = key;
+		targets[next] = legalTargets;
+		next = (next + 1) % SIZE;
+	}
+}
@@ -0,0 +1,29 @@
+package com.raz.chess.backend.lobby;
+
+import java.util.List;
+
+public class LegalMoves {
+	// every legal move in a game's current position, each {fromRow, fromCol, toRow, toCol}
+	// a promotion is listed once, the piece is picked when the move is sent
+	private String gameId;
+	private long seq;
+	private List<int[]> moves;
+
+	public LegalMoves() {
+	}
+
+	public LegalMoves(String gameId, long seq, List<int[]> moves) {
+		this.gameId = gameId;
+		this.seq = seq;
+		this.moves = moves;
+	}
+
+	public String getGameId() { return gameId; }
+	public void setGameId(String gameId) { this.gameId = gameId; }
+
+	public long getSeq() { return seq; }
+	public void setSeq(long seq) { this.seq = seq; }
+
+	public List<int[]> getMoves() { return moves; }
+	public void setMoves(List<int[]> moves) { this.moves = moves; }
+}
@@ -1,6 +1,7 @@
 package com.raz.chess.backend.lobby;
 
 public class Move {
+	private String gameId;
 	private int fromRow;
 	private int fromCol;
 	private int toRow;
@@ -18,6 +19,9 @@ public class Move {
 	    this.player = player;
 	}
 	
+	public String getGameId() { return gameId; }
+    public void setGameId(String gameId) { this.gameId = gameId; }
+
 	public int getFromRow() { return fromRow; }
     public void setFromRow(int fromRow) { this.fromRow = fromRow; }
 
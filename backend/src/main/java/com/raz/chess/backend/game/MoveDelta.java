@@ -0,0 +1,102 @@
+package com.raz.chess.backend.lobby;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class MoveDelta {
+	// what one accepted move changed, sent instead of the whole GameState
+	// the nullable fields are left out of the JSON unless that part of the state changed
+	private String gameId;
+	private long seq;
+	private int fromRow;
+	private int fromCol;
+	private int toRow;
+	private int toCol;
+
+	private String captured; // id of the captured piece
+	private Integer capturedRow; // only set for en passant, otherwise it was on the target square
+	private Integer capturedCol;
+	private Integer rookFromCol; // castling, same row as the king
+	private Integer rookToCol;
+	private String promotion; // new id of the promoted piece, e.g. wqp5
+	private GameState.Status status;
+	private Integer castling; // rights as bits: 1 white king side, 2 white queen side, 4 black king side, 8 black queen side
+	private Integer enPassantRow;
+	private Integer enPassantCol;
+	private Integer mysteryBoxRow;
+	private Integer mysteryBoxCol;
+	private String whitePlayerPowerUp;
+	private String blackPlayerPowerUp;
+
+	public MoveDelta() {
+	}
+
+	public MoveDelta(String gameId, long seq, int fromRow, int fromCol, int toRow, int toCol) {
+		this.gameId = gameId;
+		this.seq = seq;
+		this.fromRow = fromRow;
+		this.fromCol = fromCol;
+		this.toRow = toRow;
+		this.toCol = toCol;
+	}
+
+	public String getGameId() { return gameId; }
+	public void setGameId(String gameId) { this.gameId = gameId; }
+
+	public long getSeq() { return seq; }
+	public void setSeq(long seq) { this.seq = seq; }
+
+	public int getFromRow() { return fromRow; }
+	public void setFromRow(int fromRow) { this.fromRow = fromRow; }
+
+	public int getFromCol() { return fromCol; }
+	public void setFromCol(int fromCol) { this.fromCol = fromCol; }
+
+	public int getToRow() { return toRow; }
+	public void setToRow(int toRow) { this.toRow = toRow; }
+
+	public int getToCol() { return toCol; }
+	public void setToCol(int toCol) { this.toCol = toCol; }
+
+	public String getCaptured() { return captured; }
+	public void setCaptured(String captured) { this.captured = captured; }
+
+	public Integer getCapturedRow() { return capturedRow; }
+	public void setCapturedRow(Integer capturedRow) { this.capturedRow = capturedRow; }
+
+	public Integer getCapturedCol() { return capturedCol; }
+	public void setCapturedCol(Integer capturedCol) { this.capturedCol = capturedCol; }
+
+	public Integer getRookFromCol() { return rookFromCol; }
+	public void setRookFromCol(Integer rookFromCol) { this.rookFromCol = rookFromCol; }
+
+	public Integer getRookToCol() { return rookToCol; }
+	public void setRookToCol(Integer rookToCol) { this.rookToCol = rookToCol; }
+
+	public String getPromotion() { return promotion; }
+	public void setPromotion(String promotion) { this.promotion = promotion; }
+
+	public GameState.Status getStatus() { return status; }
+	public void setStatus(GameState.Status status) { this.status = status; }
+
+	public Integer getCastling() { return castling; }
+	public void setCastling(Integer castling) { this.castling = castling; }
+
+	public Integer getEnPassantRow() { return enPassantRow; }
+	public void setEnPassantRow(Integer enPassantRow) { this.enPassantRow = enPassantRow; }
+
+	public Integer getEnPassantCol() { return enPassantCol; }
+	public void setEnPassantCol(Integer enPassantCol) { this.enPassantCol = enPassantCol; }
+
+	public Integer getMysteryBoxRow() { return mysteryBoxRow; }
+	public void setMysteryBoxRow(Integer mysteryBoxRow) { this.mysteryBoxRow = mysteryBoxRow; }
+
+	public Integer getMysteryBoxCol() { return mysteryBoxCol; }
+	public void setMysteryBoxCol(Integer mysteryBoxCol) { this.mysteryBoxCol = mysteryBoxCol; }
+
+	public String getWhitePlayerPowerUp() { return whitePlayerPowerUp; }
+	public void setWhitePlayerPowerUp(String powerUp) { this.whitePlayerPowerUp = powerUp; }
+
+	public String getBlackPlayerPowerUp() { return blackPlayerPowerUp; }
+	public void setBlackPlayerPowerUp(String powerUp) { this.blackPlayerPowerUp = powerUp; }
+}
@@ -0,0 +1,438 @@
+package com.raz.chess.backend.lobby;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+
+@Component
+public class MoveJournal {
+	// append-only log of every game started and every move accepted on this server, so games survive a restart
+	// appends only copy the record into a buffer and return, a writer thread then writes whatever has piled up
+	// in one go and fsyncs once for the lot (group commit), so durability never sits on the move path
+	// a batch that fails to write is cut back off the segment and tried again, nothing counts as durable till
+	// it's through, and awaitDurable() and rotate() throw instead of waiting on it
+	//
+	// record: length (4) | payload | crc32 of payload (4), a torn or corrupt tail is cut off on replay
+	// payload starts with its type, strings are a short length then UTF-8
+	//   START  gameId, white, black, movesUntilMysteryBox (short), start FEN (empty for the usual position)
+	//   MOVE   gameId, seq (8), from (1), to (1), promotion (1, 0 if none),
+	//          mystery box square after the move (1, -1 if none), movesUntilMysteryBox after the move (short)
+	//   END    gameId
+	// the box is random, so each move records how it came out and replay copies that instead of rolling again
+	//
+	// the journal is a run of numbered segments (moves-000001.journal, ...). rotate() starts a new one, so once a
+	// snapshot holds everything up to a segment the ones before it can be deleted
+
+	private static final String PREFIX = "moves-", SUFFIX = ".journal";
+
+	private static final byte START = 1, MOVE = 2, END = 3;
+
+	private static final long RETRY_MILLIS = 1000;
+
+	public interface Listener {
+		void onStart(String gameId, String white, String black, int movesUntilMysteryBox, String startFen);
+		void onMove(String gameId, long seq, int from, int to, char promotion, int boxSquare, int movesUntilMysteryBox);
+		void onEnd(String gameId);
+	}
+
+	private final boolean enabled;
+	private final Path directory;
+	private final Thread writer;
+	private FileChannel channel; // the newest segment, only the writer touches it once the server is up
+	private long generation; // its number
+	private long end; // where its last whole record ends, the next batch is written from there
+
+	// appends go into pending, the writer swaps it with spare and writes it out without holding the lock
+	private final Object lock = new Object();
+	private ByteBuffer pending = ByteBuffer.allocate(64 * 1024);
+	private ByteBuffer spare = ByteBuffer.allocate(64 * 1024);
+	private long appended; // bytes handed to append so far
+	private long durable; // bytes written and forced to disk
+	private boolean rotating;
+	private boolean closed;
+	private IOException failure; // why the last write failed, cleared once one goes through
+	private IOException rotateFailure; // why the last rotation failed
+
+	public MoveJournal(@Value("${chess.journal.enabled:true}") boolean enabled, @Value("${chess.journal.dir:journal}") String dir) {
+		this.enabled = enabled;
+		if (!enabled) {
+			directory = null;
+			writer = null;
+			return;
+		}
+
+		try {
+			directory = Path.of(dir);
+			Files.createDirectories(directory);
+			List<Long> segments = segments();
+			generation = segments.isEmpty() ? 1 : segments.get(segments.size() - 1);
+			channel = open(generation);
+			end = channel.size();
+		} catch (IOException e) {
+			throw new IllegalStateException("Can't open move journal in " + dir, e);
+		}
+
+		writer = new Thread(this::writeLoop, "move-journal");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	public static MoveJournal disabled() {
+		// for benchmarks and tools that run a GameService without a disk behind it
+		return new MoveJournal(false, null);
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	// -- APPENDING -- //
+	public void appendStart(GameState game) {
+		if (!enabled) return;
+		byte[] id = utf8(game.getGameId()), white = utf8(game.getWhitePlayer()), black = utf8(game.getBlackPlayer());
+		byte[] fen = utf8(game.getStartFen());
+		ByteBuffer b = ByteBuffer.allocate(1 + 6 + id.length + white.length + black.length + 2 + 2 + fen.length);
+		b.put(START);
+		putString(b, id);
+		putString(b, white);
+		putString(b, black);
+		b.putShort((short) game.getMovesUntilMysteryBox());
+		putString(b, fen);
+		append(b);
+	}
+
+	public void appendMove(GameState game, Move move) {
+		// called with the game's lock held, so a game's records are in the order its moves were made
+		if (!enabled) return;
+		byte[] id = utf8(game.getGameId());
+		ByteBuffer b = ByteBuffer.allocate(1 + 2 + id.length + 8 + 4 + 2);
+		b.put(MOVE);
+		putString(b, id);
+		b.putLong(game.getSequence());
+		b.put((byte) Position.square(move.getFromRow(), move.getFromCol()));
+		b.put((byte) Position.square(move.getToRow(), move.getToCol()));
+		String promotion = move.getPromotion();
+		b.put((byte) (promotion == null || promotion.isBlank() ? 0 : promotion.charAt(0)));
+		b.put((byte) (game.getMysteryBoxRow() < 0 ? -1 : Position.square(game.getMysteryBoxRow(), game.getMysteryBoxCol())));
+		b.putShort((short) game.getMovesUntilMysteryBox());
+		append(b);
+	}
+
+	public void appendEnd(String gameId) {
+		if (!enabled) return;
+		byte[] id = utf8(gameId);
+		ByteBuffer b = ByteBuffer.allocate(1 + 2 + id.length);
+		b.put(END);
+		putString(b, id);
+		append(b);
+	}
+
+	private void append(ByteBuffer payload) {
+		payload.flip();
+		CRC32 crc = new CRC32();
+		crc.update(payload.duplicate());
+		int size = 4 + payload.remaining() + 4;
+
+		synchronized (lock) {
+			if (closed) return;
+			if (pending.remaining() < size) {
+				ByteBuffer bigger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + size));
+				pending.flip();
+				bigger.put(pending);
+				pending = bigger;
+			}
+			pending.putInt(payload.remaining()).put(payload).putInt((int) crc.getValue());
+			appended += size;
+			lock.notifyAll();
+		}
+	}
+
+	public void awaitDurable() throws InterruptedException, IOException {
+		// waits until everything appended before this call is on disk, or throws if the writer can't get it there
+		if (!enabled) return;
+		synchronized (lock) {
+			long target = appended;
+			while (durable < target && !closed && failure == null) {
+				lock.wait();
+			}
+			if (durable < target && failure != null) {
+				throw new IOException("Move journal isn't reaching the disk: " + failure.getMessage(), failure);
+			}
+		}
+	}
+
+	private void writeLoop() {
+		while (true) {
+			ByteBuffer batch;
+			boolean rotate;
+			synchronized (lock) {
+				while (pending.position() == 0 && !closed && !rotating) {
+					try {
+						lock.wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+				if (pending.position() == 0 && !rotating) return; // closed and drained
+
+				// a rotation takes everything appended so far into the old segment, later appends go in the new one
+				rotate = rotating;
+				batch = pending;
+				pending = spare;
+				spare = null;
+			}
+
+			// everything that arrived while the last batch was being forced goes out together here
+			batch.flip();
+			int bytes = batch.remaining();
+			IOException failed = null;
+			try {
+				write(batch);
+			} catch (IOException e) {
+				failed = e;
+			}
+
+			// the new segment is opened before the old one is closed, so a failed rotation leaves the old one in use
+			IOException rotateFailed = null;
+			if (rotate && failed == null) {
+				try {
+					FileChannel next = open(generation + 1);
+					closeQuietly(channel);
+					channel = next;
+					end = next.size();
+				} catch (IOException e) {
+					rotateFailed = e;
+				}
+			}
+
+			synchronized (lock) {
+				if (failed == null) {
+					batch.clear();
+					spare = batch;
+					durable += bytes;
+					failure = null;
+				} else {
+					// none of the batch counts as written, it goes back in front of whatever was appended since
+					batch.rewind();
+					ByteBuffer retry = ByteBuffer.allocate(Math.max(batch.capacity(), bytes + pending.position()));
+					retry.put(batch);
+					pending.flip();
+					retry.put(pending);
+					pending.clear();
+					spare = pending;
+					pending = retry;
+					failure = failed;
+				}
+				if (rotate) {
+					if (failed == null && rotateFailed == null) generation++;
+					rotateFailure = failed != null ? failed : rotateFailed;
+					rotating = false;
+				}
+				lock.notifyAll();
+
+				if (rotateFailed != null) {
+					System.out.println("Move journal rotation failed: " + rotateFailed.getMessage());
+				}
+				if (failed != null) {
+					System.out.println("Move journal write failed: " + failed.getMessage());
+					if (closed) {
+						System.out.println("Move journal: closing with " + pending.position() + " bytes never written");
+						return;
+					}
+					try {
+						lock.wait(RETRY_MILLIS);
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+			}
+		}
+	}
+
+	private void write(ByteBuffer batch) throws IOException {
+		// always from the end of the last good record, over whatever a failed write left behind it, so a torn
+		// record never ends up in front of good ones
+		if (channel.size() > end) channel.truncate(end);
+		long at = end;
+		while (batch.hasRemaining()) {
+			at += channel.write(batch, at);
+		}
+		channel.force(false);
+		end = at;
+	}
+
+	private static void closeQuietly(FileChannel old) {
+		// everything in it has been forced already
+		try {
+			old.close();
+		} catch (IOException e) {
+			System.out.println("Move journal close failed: " + e.getMessage());
+		}
+	}
+
+	// -- SEGMENTS -- //
+	public long rotate() throws InterruptedException, IOException {
+		// closes the current segment once everything appended before this call is on disk in it, and returns
+		// the number of the new one. everything journalled from here on is in that segment or later
+		if (!enabled) return 0;
+		synchronized (lock) {
+			long next = generation + 1;
+			rotating = true;
+			rotateFailure = null;
+			lock.notifyAll();
+			while (generation < next && !closed && rotateFailure == null) {
+				lock.wait();
+			}
+			if (generation < next) {
+				String why = rotateFailure == null ? "" : ": " + rotateFailure.getMessage();
+				throw new IOException("Move journal couldn't start segment " + next + why, rotateFailure);
+			}
+			return generation;
+		}
+	}
+
+	public void deleteBefore(long keep) throws IOException {
+		// segments older than keep are covered by a snapshot
+		if (!enabled) return;
+		for (long segment : segments()) {
+			if (segment < keep) Files.deleteIfExists(segmentFile(segment));
+		}
+	}
+
+	private List<Long> segments() throws IOException {
+		List<Long> segments = new ArrayList<>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+			for (Path f : files) {
+				String name = f.getFileName().toString();
+				try {
+					segments.add(Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())));
+				} catch (NumberFormatException e) {
+					// not one of ours
+				}
+			}
+		}
+		Collections.sort(segments);
+		return segments;
+	}
+
+	private Path segmentFile(long segment) {
+		return directory.resolve(String.format("%s%06d%s", PREFIX, segment, SUFFIX));
+	}
+
+	private FileChannel open(long segment) throws IOException {
+		FileChannel opened = FileChannel.open(segmentFile(segment), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		opened.position(opened.size());
+		return opened;
+	}
+
+	@PreDestroy
+	public void close() {
+		// lets the writer drain what's left before the channel goes
+		if (!enabled) return;
+		synchronized (lock) {
+			closed = true;
+			lock.notifyAll();
+		}
+		try {
+			writer.join(5000);
+			channel.close();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (IOException e) {
+			System.out.println("Move journal close failed: " + e.getMessage());
+		}
+	}
+
+	// -- REPLAY -- //
+	public int replay(long fromSegment, Listener listener) throws IOException {
+		// feeds every intact record from segment fromSegment on to the listener in order, and returns how many there were
+		if (!enabled) return 0;
+
+		int records = 0;
+		for (long segment : segments()) {
+			if (segment < fromSegment) continue;
+			records += replay(segmentFile(segment), segment == generation, listener);
+		}
+		return records;
+	}
+
+	private int replay(Path file, boolean current, Listener listener) throws IOException {
+		// anything after the first bad record is a write that never finished. in the segment being written
+		// it's cut off so appends follow good data, an older segment just has its tail ignored
+		ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(file));
+		int records = 0;
+		int good = 0;
+		while (data.remaining() >= 8) {
+			int length = data.getInt(data.position());
+			if (length <= 0 || length > data.remaining() - 8) break;
+
+			ByteBuffer payload = data.slice(data.position() + 4, length);
+			CRC32 crc = new CRC32();
+			crc.update(payload.duplicate());
+			if ((int) crc.getValue() != data.getInt(data.position() + 4 + length)) break;
+
+			read(payload, listener);
+			records++;
+			data.position(data.position() + length + 8);
+			good = data.position();
+		}
+
+		if (good < data.capacity()) {
+			System.out.println("Move journal: dropping " + (data.capacity() - good) + " bytes of unfinished records in " + file.getFileName());
+			if (current) {
+				channel.truncate(good);
+				synchronized (lock) {
+					end = good;
+				}
+			}
+		}
+		return records;
+	}
+
+	private static void read(ByteBuffer b, Listener listener) {
+		byte type = b.get();
+		String gameId = getString(b);
+		switch (type) {
+			case START -> {
+				String white = getString(b), black = getString(b);
+				short movesUntilMysteryBox = b.getShort();
+				String fen = getString(b);
+				listener.onStart(gameId, white, black, movesUntilMysteryBox, fen.isEmpty() ? null : fen);
+			}
+			case MOVE -> listener.onMove(gameId, b.getLong(), b.get(), b.get(), (char) b.get(), b.get(), b.getShort());
+			case END -> listener.onEnd(gameId);
+			default -> System.out.println("Move journal: unknown record type " + type);
+		}
+	}
+
+	private static byte[] utf8(String s) {
+		// names are typed in by players, anything past what a short length can say is cut off
+		byte[] bytes = (s == null ? "" : s).getBytes(StandardCharsets.UTF_8);
+		return bytes.length > Short.MAX_VALUE ? Arrays.copyOf(bytes, Short.MAX_VALUE) : bytes;
+	}
+
+	private static void putString(ByteBuffer b, byte[] bytes) {
+		b.putShort((short) bytes.length).put(bytes);
+	}
+
+	private static String getString(ByteBuffer b) {
+		byte[] bytes = new byte[b.getShort()];
+		b.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
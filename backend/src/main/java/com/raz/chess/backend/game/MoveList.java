@@ -0,0 +1,114 @@
+package com.raz.chess.backend.lobby;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public final class MoveList {
+	// moves are packed into one int: from | to << 6 | flags << 12 | promotion type << 17
+	public static final int CAPTURE = 1, DOUBLE_PUSH = 2, EN_PASSANT = 4, CASTLING = 8, PROMOTION = 16;
+
+	// no position has more than 218 legal moves
+	private static final int DEFAULT_CAPACITY = 256;
+
+	private int[] moves;
+	private int size;
+
+	public MoveList() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public MoveList(int capacity) {
+		moves = new int[capacity];
+	}
+
+	// -- ENCODING -- //
+	public static int encode(int from, int to, int flags) {
+		return from | to << 6 | flags << 12;
+	}
+
+	public static int withPromotion(int move, int type) {
+		return (move & 0x1FFFF) | type << 17;
+	}
+
+	public static int from(int move) {
+		return move & 63;
+	}
+
+	public static int to(int move) {
+		return (move >>> 6) & 63;
+	}
+
+	public static int flags(int move) {
+		return (move >>> 12) & 31;
+	}
+
+	public static int promotion(int move) {
+		// promotion piece type, or Position.EMPTY if none was picked (pawns then become queens)
+		int type = move >>> 17;
+		return type == 0 ? Position.EMPTY : type;
+	}
+
+	public static boolean is(int move, int flag) {
+		return (move & (flag << 12)) != 0;
+	}
+
+	// -- BUFFER -- //
+	public void add(int move) {
+		if (size == moves.length) {
+			moves = Arrays.copyOf(moves, size * 2);
+		}
+		moves[size++] = move;
+	}
+
+	public int get(int i) {
+		return moves[i];
+	}
+
+	public void set(int i, int move) {
+		moves[i] = move;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void clear() {
+		size = 0;
+	}
+
+	public void truncate(int newSize) {
+		size = newSize;
+	}
+
+	public int[] toArray() {
+		return Arrays.copyOf(moves, size);
+	}
+
+	public int find(int from, int to) {
+		// first move between the two squares, or -1
+		int key = from | to << 6;
+		for (int i = 0; i < size; i++) {
+			if ((moves[i] & 0xFFF) == key) return i;
+		}
+		return -1;
+	}
+
+	// compatibility with the old List<int[]> of {row, col} targets
+	public List<int[]> toTargets() {
+		return toTargets(0);
+	}
+
+	public List<int[]> toTargets(int start) {
+		List<int[]> result = new ArrayList<>(size - start);
+		for (int i = start; i < size; i++) {
+			int to = to(moves[i]);
+			result.add(new int[]{Position.rowOf(to), Position.colOf(to)});
+		}
+		return result;
+	}
+}
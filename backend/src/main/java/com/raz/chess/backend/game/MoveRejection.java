@@ -0,0 +1,25 @@
+package com.raz.chess.backend.lobby;
+
+public class MoveRejection {
+	private String gameId;
+	private String reason;
+	private Move move;
+
+	public MoveRejection() {
+	}
+
+	public MoveRejection(String gameId, String reason, Move move) {
+		this.gameId = gameId;
+		this.reason = reason;
+		this.move = move;
+	}
+
+	public String getGameId() { return gameId; }
+	public void setGameId(String gameId) { this.gameId = gameId; }
+
+	public String getReason() { return reason; }
+	public void setReason(String reason) { this.reason = reason; }
+
+	public Move getMove() { return move; }
+	public void setMove(Move move) { this.move = move; }
+}
@@ -0,0 +1,189 @@
+package com.raz.chess.backend.lobby;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static com.raz.chess.backend.lobby.Position.*;
+
+public final class OpeningBook {
+	// known opening moves by position, read straight out of a memory-mapped file
+	// entries are laid out like a Polyglot book: 16 bytes big-endian, key (8) | move (2) | weight (2) | learn (4),
+	// sorted by key, so a lookup is a binary search over the mapping and nothing is copied onto the heap.
+	// the key is our own Zobrist key rather than Polyglot's, so books are built from opening lines with build()
+	// the file is mapped read only, so every JVM on the host shares the same pages through the page cache
+
+	private static final int ENTRY_BYTES = 16;
+
+	private final ByteBuffer entries;
+	private final int count;
+
+	private OpeningBook(ByteBuffer entries) {
+		this.entries = entries;
+		this.count = entries.capacity() / ENTRY_BYTES;
+	}
+
+	public static OpeningBook open(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			// the mapping outlives the channel
+			MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			return new OpeningBook(mapped);
+		}
+	}
+
+	public int size() {
+		return count;
+	}
+
+	public int pick(Position pos) {
+		// a book move for the position picked at random by weight, or 0 if the book doesn't know it
+		// only absolute reads on the buffer, so one book is safe to share between threads
+		long key = pos.getKey();
+		int first = firstIndexOf(key);
+		if (first < 0) return 0;
+
+		int total = 0;
+		int last = first;
+		while (last < count && keyAt(last) == key) {
+			total += weightAt(last);
+			last++;
+		}
+		if (total == 0) return 0;
+
+		int roll = ThreadLocalRandom.current().nextInt(total);
+		for (int i = first; i < last; i++) {
+			roll -= weightAt(i);
+			if (roll < 0) return legalMove(pos, moveAt(i));
+		}
+		return 0;
+	}
+
+	private int firstIndexOf(long key) {
+		// lowest index with this key, keys compare unsigned like Polyglot sorts them
+		int lo = 0, hi = count;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (Long.compareUnsigned(keyAt(mid), key) < 0) lo = mid + 1;
+			else hi = mid;
+		}
+		return lo < count && keyAt(lo) == key ? lo : -1;
+	}
+
+	private long keyAt(int i) {
+		return entries.getLong(i * ENTRY_BYTES);
+	}
+
+	private int moveAt(int i) {
+		return entries.getShort(i * ENTRY_BYTES + 8) & 0xFFFF;
+	}
+
+	private int weightAt(int i) {
+		return entries.getShort(i * ENTRY_BYTES + 10) & 0xFFFF;
+	}
+
+	private static int legalMove(Position pos, int bookMove) {
+		// the book move as one of ours, checked against the legal moves so a key collision can never play nonsense
+		MoveList moves = new MoveList();
+		GameRules.generateLegalMoves(pos, moves);
+		for (int i = 0; i < moves.size(); i++) {
+			if (encode(pos, moves.get(i)) == bookMove) return moves.get(i);
+		}
+		return 0;
+	}
+
+	// -- MOVES -- //
+	static int encode(Position pos, int move) {
+		// Polyglot move: to file | to rank << 3 | from file << 6 | from rank << 9 | promotion << 12
+		// ranks count from white's side, and castling is written as the king taking its own rook
+		int from = MoveList.from(move);
+		int to = MoveList.to(move);
+		if (MoveList.is(move, MoveList.CASTLING)) {
+			to = square(rowOf(from), colOf(to) == 6 ? 7 : 0);
+		}
+		int promotion = MoveList.is(move, MoveList.PROMOTION) ? Math.max(MoveList.promotion(move), KNIGHT) : 0;
+		return colOf(to) | (7 - rowOf(to)) << 3 | colOf(from) << 6 | (7 - rowOf(from)) << 9 | promotion << 12;
+	}
+
+	// -- BUILDING -- //
+	public static int build(Iterable<String> lines, Path file) throws IOException {
+		// one opening per line as coordinate moves ("e2e4 e7e5 g1f3"), each position on the way gets the move
+		// played from it, weighted by how many lines play it. '#' starts a comment
+		// returns the number of entries written, the file is replaced in one go so readers never see half of it
+		Map<Long, Map<Integer, Integer>> weights = new TreeMap<>(Long::compareUnsigned);
+		int lineNumber = 0;
+		for (String line : lines) {
+			lineNumber++;
+			int hash = line.indexOf('#');
+			String text = (hash >= 0 ? line.substring(0, hash) : line).trim();
+			if (text.isEmpty()) continue;
+
+			Position pos = Fen.toPosition(Fen.START);
+			for (String name : text.split("\\s+")) {
+				int move = parse(pos, name);
+				if (move == 0) throw new IllegalArgumentException("Illegal book move " + name + " on line " + lineNumber);
+				weights.computeIfAbsent(pos.getKey(), k -> new TreeMap<>()).merge(encode(pos, move), 1, Integer::sum);
+				pos.makeMove(move);
+			}
+		}
+
+		List<long[]> rows = new ArrayList<>();
+		for (Map.Entry<Long, Map<Integer, Integer>> position : weights.entrySet()) {
+			for (Map.Entry<Integer, Integer> move : position.getValue().entrySet()) {
+				rows.add(new long[]{position.getKey(), move.getKey(), Math.min(move.getValue(), 0xFFFF)});
+			}
+		}
+		// most played first within a position, the order Polyglot tools expect
+		rows.sort((a, b) -> {
+			int byKey = Long.compareUnsigned(a[0], b[0]);
+			return byKey != 0 ? byKey : Long.compare(b[2], a[2]);
+		});
+
+		ByteBuffer out = ByteBuffer.allocate(rows.size() * ENTRY_BYTES);
+		for (long[] row : rows) {
+			out.putLong(row[0]).putShort((short) row[1]).putShort((short) row[2]).putInt(0);
+		}
+
+		Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), "book", ".tmp");
+		Files.write(temp, out.array());
+		Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		return rows.size();
+	}
+
+	public static void main(String[] args) throws IOException {
+		// builds a book file for chess.bot.book: <opening lines> <book file>
+		if (args.length != 2) {
+			System.out.println("usage: OpeningBook <lines.txt> <book.bin>");
+			return;
+		}
+		int entries = build(Files.readAllLines(Path.of(args[0])), Path.of(args[1]));
+		System.out.println(entries + " entries written to " + args[1]);
+	}
+
+	private static int parse(Position pos, String name) {
+		// "e2e4", or "e7e8q" for a promotion
+		if (name.length() < 4) return 0;
+		int from = Fen.squareOf(name.substring(0, 2));
+		int to = Fen.squareOf(name.substring(2, 4));
+		int promotion = name.length() > 4 ? "pnbrqk".indexOf(Character.toLowerCase(name.charAt(4))) : QUEEN;
+
+		MoveList moves = new MoveList();
+		GameRules.generateLegalMoves(pos, moves);
+		for (int i = 0; i < moves.size(); i++) {
+			int move = moves.get(i);
+			if (MoveList.from(move) != from || MoveList.to(move) != to) continue;
+			if (MoveList.is(move, MoveList.PROMOTION) && MoveList.promotion(move) != promotion) continue;
+			return move;
+		}
+		return 0;
+	}
+}
@@ -0,0 +1,96 @@
+package com.raz.chess.backend.lobby;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ParallelSearch {
+	// Lazy SMP: the same iterative deepening runs on several threads at once, sharing one transposition table
+	// the helpers fill the table with results the main thread then finds for free, nothing else is shared
+	// every search thread, main or helper, holds a permit, so all games together never use more than the budget
+
+	private final TranspositionTable table;
+	private final Semaphore permits;
+	private final ThreadPoolExecutor helpers;
+	private final ThreadLocal<Search> searches;
+
+	public ParallelSearch(TranspositionTable table, int totalThreads) {
+		this.table = table;
+		this.permits = new Semaphore(totalThreads);
+		this.searches = ThreadLocal.withInitial(() -> new Search(table));
+
+		// never more helpers running than permits, so the queue never really fills
+		AtomicInteger count = new AtomicInteger();
+		this.helpers = new ThreadPoolExecutor(totalThreads, totalThreads, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+			Thread t = new Thread(r, "search-helper-" + count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+		this.helpers.allowCoreThreadTimeOut(true);
+	}
+
+	public Search.Result search(Position pos, long budgetMillis, int maxThreads) {
+		return search(pos, budgetMillis, maxThreads, new long[0], 0);
+	}
+
+	public Search.Result search(Position pos, long budgetMillis, int maxThreads, long[] repetitionKeys, int halfmoveClock) {
+		// the calling thread is the main thread and waits for its own permit, helpers only come from what's spare
+		permits.acquireUninterruptibly();
+		int extra = 0;
+		while (extra < maxThreads - 1 && permits.tryAcquire()) {
+			extra++;
+		}
+
+		try {
+			// one new age for the whole root search, the helpers' entries are as current as the main thread's
+			table.newSearch();
+			AtomicBoolean stop = new AtomicBoolean();
+			List<Future<Search.Result>> running = new ArrayList<>(extra);
+			for (int i = 0; i < extra; i++) {
+				// every other helper starts a ply deeper, so the threads spread over two depths instead of racing on one
+				Position copy = pos.copy();
+				int firstDepth = 1 + (i & 1);
+				running.add(helpers.submit(() -> searches.get().search(copy, budgetMillis, firstDepth, Integer.MAX_VALUE, stop,
+						repetitionKeys, halfmoveClock)));
+			}
+
+			Search.Result best = searches.get().search(pos, budgetMillis, 1, Integer.MAX_VALUE, stop, repetitionKeys, halfmoveClock);
+			stop.set(true);
+
+			// the main thread's answer stands unless a helper finished a deeper search
+			long nodes = best.getNodes();
+			for (Future<Search.Result> future : running) {
+				Search.Result helper = join(future);
+				if (helper == null) continue;
+				nodes += helper.getNodes();
+				if (helper.getMove() != 0 && helper.getDepth() > best.getDepth()) best = helper;
+			}
+			return new Search.Result(best.getMove(), best.getScore(), best.getDepth(), nodes);
+		} finally {
+			permits.release(1 + extra);
+		}
+	}
+
+	public TranspositionTable getTable() {
+		return table;
+	}
+
+	private static Search.Result join(Future<Search.Result> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		} catch (ExecutionException e) {
+			System.out.println("Search helper failed: " + e.getCause());
+			return null;
+		}
+	}
+}
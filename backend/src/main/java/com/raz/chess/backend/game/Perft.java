@@ -0,0 +1,178 @@
+package com.raz.chess.backend.lobby;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+public final class Perft {
+	// counts the leaves of the legal move tree to a fixed depth, the standard check that move generation
+	// (castling, en passant, promotion, pins) is exactly right, and a raw measure of its speed
+	//
+	// from the command line: Perft <depth> [fen] [threads] [hash MB], prints the divide and nodes per second
+
+	private static final int MAX_DEPTH = 32;
+
+	private final PerftCache cache; // null for no cache
+	private final MoveList[] lists = new MoveList[MAX_DEPTH];
+
+	private Perft(PerftCache cache) {
+		this.cache = cache;
+		for (int i = 0; i < MAX_DEPTH; i++) {
+			lists[i] = new MoveList();
+		}
+	}
+
+	// -- ENTRY POINTS -- //
+	public static long perft(Position pos, int depth) {
+		return perft(pos, depth, null);
+	}
+
+	public static long perft(Position pos, int depth, PerftCache cache) {
+		checkDepth(depth);
+		return new Perft(cache).count(pos, depth);
+	}
+
+	public static Map<String, Long> divide(Position pos, int depth, PerftCache cache) {
+		// node count under each root move, to find where a generator goes wrong against a reference engine
+		checkDepth(depth);
+		Perft perft = new Perft(cache);
+		MoveList moves = new MoveList();
+		GameRules.generateLegalMoves(pos, moves);
+
+		Map<String, Long> result = new LinkedHashMap<>();
+		for (int i = 0; i < moves.size(); i++) {
+			pos.makeMove(moves.get(i));
+			result.put(Fen.moveName(moves.get(i)), depth == 1 ? 1 : perft.count(pos, depth - 1));
+			pos.unmakeMove();
+		}
+		return result;
+	}
+
+	public static Map<String, Long> divide(Position pos, int depth, PerftCache cache, ForkJoinPool pool) {
+		// same as divide, with each root move's subtree counted as its own fork/join task
+		checkDepth(depth);
+		return pool.invoke(new RootTask(pos, depth, cache));
+	}
+
+	public static long sum(Map<String, Long> divide) {
+		long nodes = 0;
+		for (long n : divide.values()) {
+			nodes += n;
+		}
+		return nodes;
+	}
+
+	private static void checkDepth(int depth) {
+		if (depth < 1 || depth >= MAX_DEPTH) throw new IllegalArgumentException("perft depth must be 1 to " + (MAX_DEPTH - 1));
+	}
+
+	// -- SEARCH -- //
+	private long count(Position pos, int depth) {
+		long key = pos.getKey();
+		if (cache != null && depth > 1) {
+			long cached = cache.probe(key, depth);
+			if (cached >= 0) return cached;
+		}
+
+		MoveList moves = lists[depth];
+		moves.clear();
+		GameRules.generateLegalMoves(pos, moves);
+		if (depth == 1) return moves.size(); // bulk count, the moves are legal so no need to make them
+
+		long nodes = 0;
+		for (int i = 0; i < moves.size(); i++) {
+			pos.makeMove(moves.get(i));
+			nodes += count(pos, depth - 1);
+			pos.unmakeMove();
+		}
+
+		if (cache != null) cache.store(key, depth, nodes);
+		return nodes;
+	}
+
+	private static class RootTask extends RecursiveTask<Map<String, Long>> {
+		private final Position pos;
+		private final int depth;
+		private final PerftCache cache;
+
+		RootTask(Position pos, int depth, PerftCache cache) {
+			this.pos = pos;
+			this.depth = depth;
+			this.cache = cache;
+		}
+
+		@Override
+		protected Map<String, Long> compute() {
+			MoveList moves = new MoveList();
+			GameRules.generateLegalMoves(pos, moves);
+
+			// each subtree gets its own copy of the position, they're walked in place
+			List<SubtreeTask> tasks = new ArrayList<>(moves.size());
+			for (int i = 0; i < moves.size(); i++) {
+				Position child = pos.copy();
+				child.makeMove(moves.get(i));
+				tasks.add(new SubtreeTask(child, depth - 1, cache));
+			}
+			invokeAll(tasks);
+
+			Map<String, Long> result = new LinkedHashMap<>();
+			for (int i = 0; i < moves.size(); i++) {
+				result.put(Fen.moveName(moves.get(i)), tasks.get(i).join());
+			}
+			return result;
+		}
+	}
+
+	private static class SubtreeTask extends RecursiveTask<Long> {
+		private final Position pos;
+		private final int depth;
+		private final PerftCache cache;
+
+		SubtreeTask(Position pos, int depth, PerftCache cache) {
+			this.pos = pos;
+			this.depth = depth;
+			this.cache = cache;
+		}
+
+		@Override
+		protected Long compute() {
+			return depth == 0 ? 1 : new Perft(cache).count(pos, depth);
+		}
+	}
+
+	// -- COMMAND LINE -- //
+	public static void main(String[] args) {
+		if (args.length < 1) {
+			System.out.println("usage: Perft <depth> [fen] [threads] [hash MB]");
+			return;
+		}
+		int depth = Integer.parseInt(args[0]);
+		Position pos = Fen.toPosition(args.length > 1 ? args[1] : Fen.START);
+		int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+		PerftCache cache = args.length > 3 && Integer.parseInt(args[3]) > 0 ? new PerftCache(Integer.parseInt(args[3])) : null;
+
+		long start = System.nanoTime();
+		Map<String, Long> divide;
+		if (threads > 1) {
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			try {
+				divide = divide(pos, depth, cache, pool);
+			} finally {
+				pool.shutdown();
+			}
+		} else {
+			divide = divide(pos, depth, cache);
+		}
+		long nanos = Math.max(1, System.nanoTime() - start);
+
+		divide.forEach((move, nodes) -> System.out.println(move + ": " + nodes));
+		long nodes = sum(divide);
+		System.out.println();
+		System.out.println("nodes " + nodes);
+		System.out.println("time " + nanos / 1_000_000 + " ms");
+		System.out.println("nps " + (long) (nodes * 1e9 / nanos));
+	}
+}
@@ -0,0 +1,37 @@
+package com.raz.chess.backend.lobby;
+
+public final class PerftCache {
+	// node counts by position key and depth, shared by every perft thread without locks
+	// an entry is two longs written separately, so the first holds key ^ count: a torn write from
+	// two threads racing on the same slot fails the check on probe and is just a miss
+	private static final long DEPTH_MIX = 0x9E3779B97F4A7C15L;
+
+	private final long[] checks;
+	private final long[] counts;
+	private final int mask;
+
+	public PerftCache(int megabytes) {
+		// 16 bytes an entry, rounded down to a power of two so the index is a mask
+		long entries = Math.max(1024, (long) megabytes * 1024 * 1024 / 16);
+		int size = Integer.highestOneBit((int) Math.min(entries, 1 << 30));
+		checks = new long[size];
+		counts = new long[size];
+		mask = size - 1;
+	}
+
+	public long probe(long key, int depth) {
+		// the count, or -1 if it isn't here
+		long k = key ^ depth * DEPTH_MIX;
+		int i = (int) k & mask;
+		long count = counts[i];
+		return (checks[i] ^ count) == k ? count : -1;
+	}
+
+	public void store(long key, int depth, long count) {
+		// always replace, perft revisits the same subtrees close together
+		long k = key ^ depth * DEPTH_MIX;
+		int i = (int) k & mask;
+		counts[i] = count;
+		checks[i] = k ^ count;
+	}
+}
@@ -0,0 +1,170 @@
+package com.raz.chess.backend.lobby;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+import static com.raz.chess.backend.lobby.Position.*;
+
+public final class Pgn {
+	// Portable Game Notation for archived games: the tag pairs, then the moves in SAN replayed from the start
+	// writes straight to an Appendable so a whole export streams out one game at a time
+
+	private static final String PIECES = " NBRQK";
+	private static final int LINE_LENGTH = 80;
+	private static final DateTimeFormatter DATE = DateTimeFormatter.ofPattern("yyyy.MM.dd").withZone(ZoneOffset.UTC);
+
+	private Pgn() {
+	}
+
+	public static void write(ArchivedGame game, Appendable out) throws IOException {
+		tag(out, "Event", "Online game");
+		tag(out, "Site", "OO Chess");
+		tag(out, "Date", DATE.format(Instant.ofEpochMilli(game.getFinishedAt())));
+		tag(out, "Round", "-");
+		tag(out, "White", game.getWhitePlayer());
+		tag(out, "Black", game.getBlackPlayer());
+		tag(out, "Result", game.getResult());
+		tag(out, "GameId", game.getGameId());
+		if (game.getStartFen() != null) {
+			tag(out, "SetUp", "1");
+			tag(out, "FEN", game.getStartFen());
+		}
+		out.append('\n');
+
+		// numbering carries on from the FEN's move number, a game black starts opens with "n..."
+		Position pos = startOf(game);
+		int[] moves = game.getMoves();
+		int lineLength = 0;
+		int number = fullmoveNumberOf(game);
+		for (int ply = 0; ply < moves.length; ply++) {
+			int move = legalMove(pos, moves[ply]);
+			if (move == 0) break; // can't happen for a game we played, but don't write nonsense after it
+
+			boolean white = pos.getSideToMove() == WHITE;
+			String prefix = white ? number + ". " : ply == 0 ? number + "... " : "";
+			if (!white) number++;
+			lineLength = append(out, prefix + play(pos, move), lineLength);
+		}
+		append(out, game.getResult(), lineLength);
+		out.append("\n\n");
+	}
+
+	public static String finalFen(ArchivedGame game) {
+		// the position the game ended in, with the move clocks counted on the way
+		Position pos = startOf(game);
+		int halfmoveClock = game.getStartFen() == null ? 0 : Fen.halfmoveClockOf(game.getStartFen());
+		int number = fullmoveNumberOf(game);
+		for (int packed : game.getMoves()) {
+			int move = legalMove(pos, packed);
+			if (move == 0) break;
+			boolean reset = typeOf(pos.pieceAt(MoveList.from(move))) == PAWN || MoveList.is(move, MoveList.CAPTURE | MoveList.EN_PASSANT);
+			if (pos.getSideToMove() == BLACK) number++;
+			pos.makeMove(move);
+			halfmoveClock = reset ? 0 : halfmoveClock + 1;
+		}
+		return Fen.of(pos, halfmoveClock, number);
+	}
+
+	private static Position startOf(ArchivedGame game) {
+		return Fen.toPosition(game.getStartFen() == null ? Fen.START : game.getStartFen());
+	}
+
+	private static int fullmoveNumberOf(ArchivedGame game) {
+		return game.getStartFen() == null ? 1 : Fen.fullmoveNumberOf(game.getStartFen());
+	}
+
+	public static String play(Position pos, int move) {
+		// Standard Algebraic Notation for a legal move, which is then played on pos
+		int from = MoveList.from(move);
+		int to = MoveList.to(move);
+		int piece = pos.pieceAt(from);
+		int type = typeOf(piece);
+		boolean capture = MoveList.is(move, MoveList.CAPTURE | MoveList.EN_PASSANT);
+
+		StringBuilder san = new StringBuilder(8);
+		if (MoveList.is(move, MoveList.CASTLING)) {
+			san.append(colOf(to) == 6 ? "O-O" : "O-O-O");
+		} else if (type == PAWN) {
+			if (capture) san.append((char) ('a' + colOf(from))).append('x');
+			san.append(Fen.nameOf(to));
+			if (MoveList.is(move, MoveList.PROMOTION)) {
+				int promotion = MoveList.promotion(move);
+				san.append('=').append(PIECES.charAt(promotion == EMPTY ? QUEEN : promotion));
+			}
+		} else {
+			san.append(PIECES.charAt(type));
+			disambiguate(pos, move, piece, san);
+			if (capture) san.append('x');
+			san.append(Fen.nameOf(to));
+		}
+
+		pos.makeMove(move);
+		int side = pos.getSideToMove();
+		if (GameRules.isKingInCheck(pos, side)) {
+			san.append(GameRules.hasAnyLegalMove(pos, side) ? '+' : '#');
+		}
+		return san.toString();
+	}
+
+	private static void disambiguate(Position pos, int move, int piece, StringBuilder san) {
+		// another piece of the same kind that can reach the square: the file tells them apart if it can,
+		// then the rank, then both
+		int from = MoveList.from(move);
+		int to = MoveList.to(move);
+		boolean ambiguous = false, sameFile = false, sameRank = false;
+
+		MoveList moves = new MoveList();
+		GameRules.generateLegalMoves(pos, moves);
+		for (int i = 0; i < moves.size(); i++) {
+			int other = MoveList.from(moves.get(i));
+			if (other == from || MoveList.to(moves.get(i)) != to || pos.pieceAt(other) != piece) continue;
+			ambiguous = true;
+			sameFile |= colOf(other) == colOf(from);
+			sameRank |= rowOf(other) == rowOf(from);
+		}
+		if (!ambiguous) return;
+
+		String square = Fen.nameOf(from);
+		if (!sameFile) san.append(square.charAt(0));
+		else if (!sameRank) san.append(square.charAt(1));
+		else san.append(square);
+	}
+
+	private static int legalMove(Position pos, int packed) {
+		// an archived move (no flags) as the legal move it was, flags and all, or 0
+		MoveList moves = new MoveList();
+		GameRules.generateLegalMoves(pos, moves);
+		for (int i = 0; i < moves.size(); i++) {
+			int move = moves.get(i);
+			if (MoveList.from(move) != MoveList.from(packed) || MoveList.to(move) != MoveList.to(packed)) continue;
+			if (MoveList.is(move, MoveList.PROMOTION) && promotionOf(move) != promotionOf(packed)) continue;
+			return move;
+		}
+		return 0;
+	}
+
+	private static int promotionOf(int move) {
+		int promotion = MoveList.promotion(move);
+		return promotion == EMPTY ? QUEEN : promotion;
+	}
+
+	private static void tag(Appendable out, String name, String value) throws IOException {
+		String escaped = (value == null ? "?" : value).replace("\\", "\\\\").replace("\"", "\\\"");
+		out.append('[').append(name).append(" \"").append(escaped).append("\"]\n");
+	}
+
+	private static int append(Appendable out, String token, int lineLength) throws IOException {
+		// movetext wrapped short of 80 columns, tokens are never split
+		if (lineLength > 0 && lineLength + 1 + token.length() > LINE_LENGTH) {
+			out.append('\n');
+			lineLength = 0;
+		} else if (lineLength > 0) {
+			out.append(' ');
+			lineLength++;
+		}
+		out.append(token);
+		return lineLength + token.length();
+	}
+}
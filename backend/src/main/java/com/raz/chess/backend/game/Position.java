@@ -0,0 +1,431 @@
+package com.raz.chess.backend.lobby;
+
+import java.util.Arrays;
+
+public class Position {
+	// piece codes: colour is code / 6, type is code % 6
+	public static final int PAWN = 0, KNIGHT = 1, BISHOP = 2, ROOK = 3, QUEEN = 4, KING = 5;
+	public static final int WHITE = 0, BLACK = 1;
+	public static final int EMPTY = -1;
+
+	// castling rights as bits
+	public static final int WHITE_KING_SIDE = 1, WHITE_QUEEN_SIDE = 2, BLACK_KING_SIDE = 4, BLACK_QUEEN_SIDE = 8;
+
+	private static final String TYPES = "pnbrqk";
+	private static final int MAX_PLY = 64;
+
+	// castling rights kept after a move touches a square (king and rook home squares clear theirs)
+	private static final int[] CASTLE_MASK = new int[64];
+	static {
+		Arrays.fill(CASTLE_MASK, 15);
+		CASTLE_MASK[square(7, 4)] = ~(WHITE_KING_SIDE | WHITE_QUEEN_SIDE) & 15;
+		CASTLE_MASK[square(7, 7)] = ~WHITE_KING_SIDE & 15;
+		CASTLE_MASK[square(7, 0)] = ~WHITE_QUEEN_SIDE & 15;
+		CASTLE_MASK[square(0, 4)] = ~(BLACK_KING_SIDE | BLACK_QUEEN_SIDE) & 15;
+		CASTLE_MASK[square(0, 7)] = ~BLACK_KING_SIDE & 15;
+		CASTLE_MASK[square(0, 0)] = ~BLACK_QUEEN_SIDE & 15;
+	}
+
+	// one bitboard per piece code, plus occupancy per colour and overall
+	// square index is row * 8 + col, so bit 0 is a8 (row 0, col 0) like the grid
+	private final long[] pieces = new long[12];
+	private final long[] colours = new long[2];
+	private long occupied;
+
+	// piece code per square for O(1) lookups, and the frontend ids so conversion is lossless
+	private final int[] mailbox = new int[64];
+	private final String[] ids = new String[64];
+
+	// attack set of the piece on each square, kept up to date by put/remove
+	// the per colour maps are the union of those, rebuilt only when asked for after a change
+	private final long[] attacksFrom = new long[64];
+	private final long[] attackMaps = new long[2];
+	private int staleAttackMaps = 3;
+
+	private int sideToMove = WHITE;
+	private int castling;
+	private int enPassant = -1;
+	private long enPassantKey; // what en passant adds to the key, 0 unless a pawn can take
+	private long key;
+
+	// evaluation terms that only depend on which piece is where, white minus black, kept up to date by put/remove
+	private int middlegame;
+	private int endgame;
+	private int phase;
+
+	// undo stack for makeMove/unmakeMove, preallocated so making a move allocates nothing
+	// moves: from | to << 6 | promoted << 12
+	// states: castling | (enPassant + 1) << 4 | (captured + 1) << 11 | capturedSq << 15
+	private int ply;
+	private int[] undoMoves = new int[MAX_PLY];
+	private int[] undoStates = new int[MAX_PLY];
+	private String[] undoIds = new String[MAX_PLY];
+	private String[] undoCapturedIds = new String[MAX_PLY];
+	private long[] undoKeys = new long[MAX_PLY];
+
+	public Position() {
+		Arrays.fill(mailbox, EMPTY);
+	}
+
+	// -- CONVERSION -- //
+	public static Position fromBoard(Board board) {
+		Position pos = new Position();
+		for (int r = 0; r < 8; r++) {
+			for (int c = 0; c < 8; c++) {
+				String id = board.get(r, c);
+				if (id == null) continue;
+				pos.put(square(r, c), pieceOf(id), id);
+			}
+		}
+		return pos;
+	}
+
+	public static Position fromGameState(GameState gameState) {
+		Position pos = fromBoard(gameState.getBoard());
+		pos.setSideToMove("BLACK".equals(gameState.getTurn()) ? BLACK : WHITE);
+
+		pos.setCastling(castlingRightsOf(gameState));
+		pos.setEnPassant(enPassantOf(gameState));
+		return pos;
+	}
+
+	public static int castlingRightsOf(GameState gameState) {
+		int rights = 0;
+		if (gameState.isWhiteKingSideCastle()) rights |= WHITE_KING_SIDE;
+		if (gameState.isWhiteQueenSideCastle()) rights |= WHITE_QUEEN_SIDE;
+		if (gameState.isBlackKingSideCastle()) rights |= BLACK_KING_SIDE;
+		if (gameState.isBlackQueenSideCastle()) rights |= BLACK_QUEEN_SIDE;
+		return rights;
+	}
+
+	public static int enPassantOf(GameState gameState) {
+		if (gameState.getEnPassantRow() < 0 || gameState.getEnPassantCol() < 0) return -1;
+		return square(gameState.getEnPassantRow(), gameState.getEnPassantCol());
+	}
+
+	public Board toBoard() {
+		Board board = Board.empty();
+		writeTo(board);
+		return board;
+	}
+
+	public void writeTo(Board board) {
+		for (int sq = 0; sq < 64; sq++) {
+			board.set(rowOf(sq), colOf(sq), ids[sq]);
+		}
+	}
+
+	public Position copy() {
+		Position p = new Position();
+		System.arraycopy(pieces, 0, p.pieces, 0, 12);
+		System.arraycopy(colours, 0, p.colours, 0, 2);
+		System.arraycopy(mailbox, 0, p.mailbox, 0, 64);
+		System.arraycopy(ids, 0, p.ids, 0, 64);
+		System.arraycopy(attacksFrom, 0, p.attacksFrom, 0, 64);
+		p.occupied = occupied;
+		p.sideToMove = sideToMove;
+		p.castling = castling;
+		p.enPassant = enPassant;
+		p.enPassantKey = enPassantKey;
+		p.key = key;
+		p.middlegame = middlegame;
+		p.endgame = endgame;
+		p.phase = phase;
+		return p;
+	}
+
+	// -- EDITING -- //
+	public void put(int sq, int piece, String id) {
+		long b = bit(sq);
+		pieces[piece] |= b;
+		colours[colourOf(piece)] |= b;
+		occupied |= b;
+		key ^= Zobrist.piece(piece, sq);
+		middlegame += Evaluation.MIDDLEGAME[piece][sq];
+		endgame += Evaluation.ENDGAME[piece][sq];
+		phase += Evaluation.PHASE[typeOf(piece)];
+		mailbox[sq] = piece;
+		ids[sq] = id;
+		attacksFrom[sq] = Attacks.attacksOf(piece, sq, occupied);
+		refreshSlidersThrough(sq);
+	}
+
+	public void remove(int sq) {
+		int piece = mailbox[sq];
+		if (piece == EMPTY) return;
+		long b = ~bit(sq);
+		pieces[piece] &= b;
+		colours[colourOf(piece)] &= b;
+		occupied &= b;
+		key ^= Zobrist.piece(piece, sq);
+		middlegame -= Evaluation.MIDDLEGAME[piece][sq];
+		endgame -= Evaluation.ENDGAME[piece][sq];
+		phase -= Evaluation.PHASE[typeOf(piece)];
+		mailbox[sq] = EMPTY;
+		ids[sq] = null;
+		attacksFrom[sq] = 0;
+		refreshSlidersThrough(sq);
+	}
+
+	private void refreshSlidersThrough(int sq) {
+		// only sliders that can see sq have their rays changed by it
+		long queens = pieces[piece(WHITE, QUEEN)] | pieces[piece(BLACK, QUEEN)];
+		long diagonal = pieces[piece(WHITE, BISHOP)] | pieces[piece(BLACK, BISHOP)] | queens;
+		long straight = pieces[piece(WHITE, ROOK)] | pieces[piece(BLACK, ROOK)] | queens;
+		long sliders = (Attacks.bishopAttacks(sq, occupied) & diagonal) | (Attacks.rookAttacks(sq, occupied) & straight);
+		while (sliders != 0) {
+			int s = Long.numberOfTrailingZeros(sliders);
+			sliders &= sliders - 1;
+			attacksFrom[s] = Attacks.attacksOf(mailbox[s], s, occupied);
+		}
+		staleAttackMaps = 3;
+	}
+
+	public void move(int from, int to) {
+		// same as Board.move, whatever is on the target gets replaced
+		int piece = mailbox[from];
+		if (piece == EMPTY) return;
+		String id = ids[from];
+		remove(to);
+		remove(from);
+		put(to, piece, id);
+	}
+
+	// -- MAKE / UNMAKE -- //
+	public void makeMove(int move) {
+		// packed move from a MoveList
+		makeMove(MoveList.from(move), MoveList.to(move), MoveList.promotion(move));
+	}
+
+	public void makeMove(int from, int to, int promotion) {
+		// plays a move in place, including en passant captures, the rook hop when castling and promotion
+		// promotion is the piece type to promote to (EMPTY means queen, same default as GameService)
+		int piece = mailbox[from];
+		String id = ids[from];
+		int colour = colourOf(piece);
+		int type = typeOf(piece);
+
+		// en passant is the only capture where the captured piece isn't on the target square
+		int capturedSq = to;
+		if (type == PAWN && to == enPassant && mailbox[to] == EMPTY && colOf(from) != colOf(to)) {
+			capturedSq = square(rowOf(from), colOf(to));
+		}
+		int captured = mailbox[capturedSq];
+		boolean promoted = type == PAWN && (rowOf(to) == 0 || rowOf(to) == 7);
+
+		if (ply == undoMoves.length) growUndoStack();
+		undoMoves[ply] = from | to << 6 | (promoted ? 1 : 0) << 12;
+		undoStates[ply] = castling | (enPassant + 1) << 4 | (captured + 1) << 11 | capturedSq << 15;
+		undoIds[ply] = id;
+		undoCapturedIds[ply] = ids[capturedSq];
+		undoKeys[ply] = key;
+		ply++;
+
+		if (captured != EMPTY) remove(capturedSq);
+		remove(from);
+		if (promoted) {
+			int promoType = promotion == EMPTY ? QUEEN : promotion;
+			put(to, piece(colour, promoType), promotedId(id, promoType));
+		} else {
+			put(to, piece, id);
+		}
+
+		// castling: king moves two columns, bring the rook across
+		if (type == KING && Math.abs(colOf(to) - colOf(from)) == 2) {
+			int row = rowOf(from);
+			if (colOf(to) == 6) {
+				move(square(row, 7), square(row, 5));
+			} else {
+				move(square(row, 0), square(row, 3));
+			}
+		}
+
+		setCastling(castling & CASTLE_MASK[from] & CASTLE_MASK[to]);
+		setEnPassant((type == PAWN && Math.abs(to - from) == 16) ? (from + to) >>> 1 : -1);
+		setSideToMove(colour ^ 1);
+	}
+
+	public void unmakeMove() {
+		ply--;
+		int m = undoMoves[ply];
+		int state = undoStates[ply];
+		int from = m & 63;
+		int to = (m >>> 6) & 63;
+		boolean promoted = (m >>> 12) != 0;
+
+		int piece = mailbox[to];
+		int colour = colourOf(piece);
+		remove(to);
+		put(from, promoted ? piece(colour, PAWN) : piece, undoIds[ply]);
+
+		if (typeOf(piece) == KING && Math.abs(colOf(to) - colOf(from)) == 2) {
+			int row = rowOf(from);
+			if (colOf(to) == 6) {
+				move(square(row, 5), square(row, 7));
+			} else {
+				move(square(row, 3), square(row, 0));
+			}
+		}
+
+		int captured = ((state >>> 11) & 15) - 1;
+		if (captured != EMPTY) {
+			put((state >>> 15) & 63, captured, undoCapturedIds[ply]);
+		}
+
+		castling = state & 15;
+		enPassant = ((state >>> 4) & 127) - 1;
+		enPassantKey = Zobrist.enPassant(enPassant, this); // the pieces are back as they were when it was set
+		sideToMove = colour;
+		key = undoKeys[ply];
+	}
+
+	private void growUndoStack() {
+		int size = undoMoves.length * 2;
+		undoMoves = Arrays.copyOf(undoMoves, size);
+		undoStates = Arrays.copyOf(undoStates, size);
+		undoIds = Arrays.copyOf(undoIds, size);
+		undoCapturedIds = Arrays.copyOf(undoCapturedIds, size);
+		undoKeys = Arrays.copyOf(undoKeys, size);
+	}
+
+	// -- QUERIES -- //
+	public long pieces(int piece) {
+		return pieces[piece];
+	}
+
+	public long pieces(int colour, int type) {
+		return pieces[colour * 6 + type];
+	}
+
+	public long colour(int colour) {
+		return colours[colour];
+	}
+
+	public long occupied() {
+		return occupied;
+	}
+
+	public long attackMap(int colour) {
+		// every square attacked by that colour
+		if ((staleAttackMaps & (1 << colour)) != 0) {
+			long map = 0;
+			long own = colours[colour];
+			while (own != 0) {
+				map |= attacksFrom[Long.numberOfTrailingZeros(own)];
+				own &= own - 1;
+			}
+			attackMaps[colour] = map;
+			staleAttackMaps &= ~(1 << colour);
+		}
+		return attackMaps[colour];
+	}
+
+	public long attacksFrom(int sq) {
+		return attacksFrom[sq];
+	}
+
+	public int pieceAt(int sq) {
+		return mailbox[sq];
+	}
+
+	public String idAt(int sq) {
+		return ids[sq];
+	}
+
+	public int kingSquare(int colour) {
+		long king = pieces[colour * 6 + KING];
+		return king == 0 ? -1 : Long.numberOfTrailingZeros(king);
+	}
+
+	public int getSideToMove() {
+		return sideToMove;
+	}
+
+	public void setSideToMove(int sideToMove) {
+		key ^= Zobrist.sideToMove(this.sideToMove) ^ Zobrist.sideToMove(sideToMove);
+		this.sideToMove = sideToMove;
+	}
+
+	public int getCastling() {
+		return castling;
+	}
+
+	public void setCastling(int castling) {
+		key ^= Zobrist.castling(this.castling) ^ Zobrist.castling(castling);
+		this.castling = castling;
+	}
+
+	public int getEnPassant() {
+		return enPassant;
+	}
+
+	public void setEnPassant(int enPassant) {
+		// set once the pieces are in place, whether a pawn can take depends on them
+		key ^= enPassantKey;
+		enPassantKey = Zobrist.enPassant(enPassant, this);
+		key ^= enPassantKey;
+		this.enPassant = enPassant;
+	}
+
+	public long getKey() {
+		// Zobrist key, kept up to date by every edit
+		return key;
+	}
+
+	public int middlegameScore() {
+		// material and piece-square values for the middlegame, white minus black
+		return middlegame;
+	}
+
+	public int endgameScore() {
+		return endgame;
+	}
+
+	public int phase() {
+		// how much non-pawn material is left, Evaluation.MAX_PHASE at the start
+		return phase;
+	}
+
+	// -- HELPERS -- //
+	public static int square(int row, int col) {
+		return (row << 3) | col;
+	}
+
+	public static int rowOf(int sq) {
+		return sq >>> 3;
+	}
+
+	public static int colOf(int sq) {
+		return sq & 7;
+	}
+
+	public static long bit(int sq) {
+		return 1L << sq;
+	}
+
+	public static int piece(int colour, int type) {
+		return colour * 6 + type;
+	}
+
+	public static int colourOf(int piece) {
+		return piece >= 6 ? BLACK : WHITE;
+	}
+
+	public static int typeOf(int piece) {
+		return piece >= 6 ? piece - 6 : piece;
+	}
+
+	public static int colourOf(char colour) {
+		return colour == 'b' ? BLACK : WHITE;
+	}
+
+	public static String promotedId(String id, int type) {
+		// same scheme as GameService, the e pawn promoting to a queen goes from wp5 to wqp5
+		return id.charAt(0) + TYPES.substring(type, type + 1) + id.substring(1);
+	}
+
+	public static int pieceOf(String id) {
+		// ids look like "wp5", "bq" or "wqp5" for a promoted pawn; the type is always the second char
+		return piece(colourOf(id.charAt(0)), TYPES.indexOf(id.charAt(1)));
+	}
+}
@@ -0,0 +1,80 @@
+package com.raz.chess.backend.lobby;
+
+import java.util.Arrays;
+
+public final class RepetitionTable {
+	// how many times each position has come up since the last pawn move or capture, by zobrist key
+	// open addressing over a power of two table, so counting a position is a probe or two instead of a walk
+	// back through the game. nothing before a pawn move or capture can come round again, so the table is
+	// cleared then, and the fifty-move rule keeps it to about a hundred positions
+
+	private long[] keys;
+	private byte[] counts; // 0 marks an empty slot
+	private int size;
+
+	public RepetitionTable() {
+		keys = new long[64];
+		counts = new byte[64];
+	}
+
+	public int add(long key) {
+		// records the position once more and returns how many times it's been seen now
+		if (size * 2 >= keys.length) grow();
+		int slot = slotOf(key);
+		if (counts[slot] == 0) {
+			keys[slot] = key;
+			size++;
+		}
+		if (counts[slot] < Byte.MAX_VALUE) counts[slot]++;
+		return counts[slot];
+	}
+
+	public int count(long key) {
+		return counts[slotOf(key)];
+	}
+
+	public void clear() {
+		if (size == 0) return;
+		Arrays.fill(counts, (byte) 0);
+		size = 0;
+	}
+
+	public long[] toArray() {
+		// every key once per time it was seen, adding them back in any order gives the same table
+		int total = 0;
+		for (byte count : counts) {
+			total += count;
+		}
+		long[] all = new long[total];
+		int i = 0;
+		for (int slot = 0; slot < keys.length; slot++) {
+			for (int n = 0; n < counts[slot]; n++) {
+				all[i++] = keys[slot];
+			}
+		}
+		return all;
+	}
+
+	private int slotOf(long key) {
+		// linear probing from the key's low bits, zobrist keys are already well spread
+		int mask = keys.length - 1;
+		int slot = (int) key & mask;
+		while (counts[slot] != 0 && keys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private void grow() {
+		long[] oldKeys = keys;
+		byte[] oldCounts = counts;
+		keys = new long[oldKeys.length * 2];
+		counts = new byte[oldCounts.length * 2];
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldCounts[i] == 0) continue;
+			int slot = slotOf(oldKeys[i]);
+			keys[slot] = oldKeys[i];
+			counts[slot] = oldCounts[i];
+		}
+	}
+}
@@ -0,0 +1,326 @@
+package com.raz.chess.backend.lobby;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.raz.chess.backend.lobby.MoveList.*;
+import static com.raz.chess.backend.lobby.Position.*;
+import static com.raz.chess.backend.lobby.TranspositionTable.*;
+
+public class Search {
+	// negamax alpha-beta over GameRules' legal moves, deepened a ply at a time until the time budget runs out
+	// the best move of the last finished depth is the answer, so running out of time never loses a whole search
+	// one Search per thread, it keeps its move lists and killers between calls. the transposition table can be shared
+	// a position already seen in the game or earlier on the line, or one fifty moves past the last pawn move or
+	// capture, scores as a draw inside the tree, so the bot neither walks into a draw it's winning nor misses one it needs
+
+	public static final int MATE = 30000;
+	private static final int INFINITY = 32000;
+	private static final int MAX_PLY = 64;
+	private static final long[] NO_KEYS = {};
+
+	// ordering scores: hash/previous best, captures (most valuable victim, least valuable attacker), killers, the rest
+	private static final int HASH_SCORE = 200_000, CAPTURE_SCORE = 100_000, PROMOTION_SCORE = 90_000, KILLER_SCORE = 80_000;
+
+	private final TranspositionTable table;
+
+	private final MoveList[] lists = new MoveList[MAX_PLY + 1];
+	private final int[][] scores = new int[MAX_PLY + 1][];
+	private final int[][] killers = new int[MAX_PLY + 1][2];
+	private final long[] pathKeys = new long[MAX_PLY + 1]; // the key at each ply of the line being searched
+	private final int[] clocks = new int[MAX_PLY + 1]; // and the halfmove clock there
+
+	private long[] gameKeys = NO_KEYS; // sorted, the game's positions since its last pawn move or capture
+
+	private long deadline;
+	private AtomicBoolean stop; // set by someone else to end the search early, e.g. the main thread of a parallel search
+	private long nodes;
+	private boolean stopped;
+
+	public Search() {
+		this(new TranspositionTable(16, Replacement.DEPTH_AND_AGE));
+	}
+
+	public Search(TranspositionTable table) {
+		this.table = table;
+		for (int i = 0; i <= MAX_PLY; i++) {
+			lists[i] = new MoveList();
+			scores[i] = new int[256];
+		}
+	}
+
+	public static class Result {
+		private final int move; // packed MoveList move, 0 if there were no legal moves
+		private final int score;
+		private final int depth;
+		private final long nodes;
+
+		public Result(int move, int score, int depth, long nodes) {
+			this.move = move;
+			this.score = score;
+			this.depth = depth;
+			this.nodes = nodes;
+		}
+
+		public int getMove() { return move; }
+		public int getScore() { return score; }
+		public int getDepth() { return depth; }
+		public long getNodes() { return nodes; }
+	}
+
+	public Result search(Position pos, long budgetMillis) {
+		return search(pos, budgetMillis, MAX_PLY - 1);
+	}
+
+	public Result search(Position pos, long budgetMillis, int maxDepth) {
+		// a search of its own is a new root, so the table's older entries go stale
+		table.newSearch();
+		return search(pos, budgetMillis, 1, maxDepth, new AtomicBoolean());
+	}
+
+	public Result search(Position pos, long budgetMillis, int firstDepth, int maxDepth, AtomicBoolean stop) {
+		return search(pos, budgetMillis, firstDepth, maxDepth, stop, NO_KEYS, 0);
+	}
+
+	public Result search(Position pos, long budgetMillis, int firstDepth, int maxDepth, AtomicBoolean stop, long[] repetitionKeys,
+			int halfmoveClock) {
+		// firstDepth lets parallel helpers start out of step with the main thread
+		// the table's age is left to whoever starts the root search, once for all its threads
+		// repetitionKeys and halfmoveClock are the game's, as its RepetitionTable and GameState have them
+		gameKeys = repetitionKeys.clone();
+		Arrays.sort(gameKeys);
+		pathKeys[0] = pos.getKey();
+		clocks[0] = halfmoveClock;
+		deadline = System.nanoTime() + budgetMillis * 1_000_000L;
+		maxDepth = Math.min(maxDepth, MAX_PLY - 1);
+		this.stop = stop;
+		nodes = 0;
+		stopped = false;
+		for (int[] k : killers) {
+			k[0] = k[1] = 0;
+		}
+
+		MoveList root = new MoveList();
+		GameRules.generateLegalMoves(pos, root);
+		if (root.isEmpty()) return new Result(0, 0, 0, 0);
+
+		// a move remembered from an earlier search of this position is the first guess
+		int best = root.get(0);
+		int remembered = TranspositionTable.move(table.probe(pos.getKey()));
+		for (int i = 0; i < root.size(); i++) {
+			if (root.get(i) == remembered) best = remembered;
+		}
+		int bestScore = 0;
+		int completed = 0;
+		for (int depth = Math.min(firstDepth, maxDepth); depth <= maxDepth; depth++) {
+			// last depth's best goes first, it's the likeliest best again and makes the cut offs come early
+			moveToFront(root, best);
+
+			int alpha = -INFINITY;
+			int iterationBest = 0;
+			for (int i = 0; i < root.size(); i++) {
+				int move = root.get(i);
+				clocks[1] = nextClock(pos, move, 0);
+				pos.makeMove(move);
+				int score = -negamax(pos, depth - 1, 1, -INFINITY, -alpha);
+				pos.unmakeMove();
+				if (stopped) break;
+				if (score > alpha) {
+					alpha = score;
+					iterationBest = move;
+				}
+			}
+
+			// a half finished depth still counts if it found something, every move it scored was searched fully
+			if (iterationBest != 0) {
+				best = iterationBest;
+				bestScore = alpha;
+			}
+			if (stopped) break;
+			completed = depth;
+			table.store(pos.getKey(), depth, EXACT, toTable(bestScore, 0), best);
+
+			// nothing more to learn once there's a forced mate or only one move
+			if (Math.abs(bestScore) >= MATE - MAX_PLY || root.size() == 1) break;
+		}
+		return new Result(best, bestScore, completed, nodes);
+	}
+
+	private int negamax(Position pos, int depth, int ply, int alpha, int beta) {
+		if (outOfTime()) return 0;
+
+		long key = pos.getKey();
+		pathKeys[ply] = key;
+		if (isRepetition(key, ply)) return 0;
+
+		int colour = pos.getSideToMove();
+		boolean inCheck = GameRules.isKingInCheck(pos, colour);
+		if (clocks[ply] >= 100 && !inCheck) return 0; // in check it's a draw only if it isn't mate, seen below
+		if (inCheck) depth++; // look one further when in check, so mates aren't cut off at the horizon
+		if (depth <= 0) return quiescence(pos, ply, alpha, beta);
+
+		// a result from at least this deep settles it if its bound fits the window
+		long entry = table.probe(key);
+		if (entry != 0 && TranspositionTable.depth(entry) >= depth) {
+			int score = fromTable(TranspositionTable.score(entry), ply);
+			int bound = TranspositionTable.bound(entry);
+			if (bound == EXACT) return Math.max(alpha, Math.min(beta, score));
+			if (bound == LOWER && score >= beta) return beta;
+			if (bound == UPPER && score <= alpha) return alpha;
+		}
+
+		MoveList moves = lists[ply];
+		moves.clear();
+		GameRules.generateLegalMoves(pos, moves);
+		if (moves.isEmpty()) return inCheck ? -(MATE - ply) : 0; // sooner mates score higher
+		if (clocks[ply] >= 100) return 0;
+		if (ply >= MAX_PLY) return Evaluation.evaluate(pos);
+
+		int[] moveScores = scores[ply];
+		scoreMoves(pos, moves, moveScores, ply, TranspositionTable.move(entry));
+		int originalAlpha = alpha;
+		int bestMove = 0;
+		for (int i = 0; i < moves.size(); i++) {
+			int move = pickNext(moves, moveScores, i);
+			clocks[ply + 1] = nextClock(pos, move, ply);
+			pos.makeMove(move);
+			int score = -negamax(pos, depth - 1, ply + 1, -beta, -alpha);
+			pos.unmakeMove();
+			if (stopped) return 0;
+
+			if (score >= beta) {
+				// quiet moves that cut off are remembered for the other moves at this ply
+				if (!MoveList.is(move, CAPTURE) && killers[ply][0] != move) {
+					killers[ply][1] = killers[ply][0];
+					killers[ply][0] = move;
+				}
+				table.store(key, depth, LOWER, toTable(beta, ply), move);
+				return beta;
+			}
+			if (score > alpha) {
+				alpha = score;
+				bestMove = move;
+			}
+		}
+		table.store(key, depth, alpha > originalAlpha ? EXACT : UPPER, toTable(alpha, ply), bestMove);
+		return alpha;
+	}
+
+	private int quiescence(Position pos, int ply, int alpha, int beta) {
+		// only captures and promotions from here, so the search never stops in the middle of an exchange
+		if (outOfTime()) return 0;
+
+		int standPat = Evaluation.evaluate(pos);
+		if (ply >= MAX_PLY || standPat >= beta) return standPat >= beta ? beta : standPat;
+		if (standPat > alpha) alpha = standPat;
+
+		MoveList moves = lists[ply];
+		moves.clear();
+		GameRules.generateLegalMoves(pos, moves);
+		int kept = 0;
+		for (int i = 0; i < moves.size(); i++) {
+			int move = moves.get(i);
+			if (MoveList.is(move, CAPTURE) || MoveList.promotion(move) == QUEEN) moves.set(kept++, move);
+		}
+		moves.truncate(kept);
+
+		int[] moveScores = scores[ply];
+		scoreMoves(pos, moves, moveScores, ply, 0);
+		for (int i = 0; i < moves.size(); i++) {
+			int move = pickNext(moves, moveScores, i);
+			pos.makeMove(move);
+			int score = -quiescence(pos, ply + 1, -beta, -alpha);
+			pos.unmakeMove();
+			if (stopped) return 0;
+
+			if (score >= beta) return beta;
+			if (score > alpha) alpha = score;
+		}
+		return alpha;
+	}
+
+	// -- DRAWS -- //
+	private boolean isRepetition(long key, int ply) {
+		// only as far back as the last pawn move or capture, nothing before it can come round again
+		for (int back = ply - 2; back >= 0 && back >= ply - clocks[ply]; back -= 2) {
+			if (pathKeys[back] == key) return true;
+		}
+		// the line has no pawn move or capture in it, so the game's own positions are still reachable
+		return clocks[ply] >= ply && Arrays.binarySearch(gameKeys, key) >= 0;
+	}
+
+	private int nextClock(Position pos, int move, int ply) {
+		// called before the move is made
+		return MoveList.is(move, CAPTURE) || typeOf(pos.pieceAt(from(move))) == PAWN ? 0 : clocks[ply] + 1;
+	}
+
+	// -- ORDERING -- //
+	private void scoreMoves(Position pos, MoveList moves, int[] moveScores, int ply, int hashMove) {
+		for (int i = 0; i < moves.size(); i++) {
+			int move = moves.get(i);
+			int score = 0;
+			if (move == hashMove) {
+				score = HASH_SCORE;
+			} else if (MoveList.is(move, CAPTURE)) {
+				int victim = MoveList.is(move, EN_PASSANT) ? PAWN : typeOf(pos.pieceAt(to(move)));
+				int attacker = typeOf(pos.pieceAt(from(move)));
+				score = CAPTURE_SCORE + 10 * Evaluation.VALUES[victim] - attacker;
+			} else if (MoveList.promotion(move) == QUEEN) {
+				score = PROMOTION_SCORE;
+			} else if (move == killers[ply][0]) {
+				score = KILLER_SCORE;
+			} else if (move == killers[ply][1]) {
+				score = KILLER_SCORE - 1;
+			}
+			moveScores[i] = score;
+		}
+	}
+
+	private static int pickNext(MoveList moves, int[] moveScores, int i) {
+		// selection sort one step at a time, a cut off usually comes before the list is half sorted
+		int best = i;
+		for (int j = i + 1; j < moves.size(); j++) {
+			if (moveScores[j] > moveScores[best]) best = j;
+		}
+		if (best != i) {
+			int move = moves.get(best);
+			moves.set(best, moves.get(i));
+			moves.set(i, move);
+			int score = moveScores[best];
+			moveScores[best] = moveScores[i];
+			moveScores[i] = score;
+		}
+		return moves.get(i);
+	}
+
+	private static void moveToFront(MoveList moves, int move) {
+		for (int i = 0; i < moves.size(); i++) {
+			if (moves.get(i) == move) {
+				for (int j = i; j > 0; j--) {
+					moves.set(j, moves.get(j - 1));
+				}
+				moves.set(0, move);
+				return;
+			}
+		}
+	}
+
+	// mate scores count plies from the root, the table keeps them counted from the position itself
+	private static int toTable(int score, int ply) {
+		if (score >= MATE - MAX_PLY) return score + ply;
+		if (score <= -(MATE - MAX_PLY)) return score - ply;
+		return score;
+	}
+
+	private static int fromTable(int score, int ply) {
+		if (score >= MATE - MAX_PLY) return score - ply;
+		if (score <= -(MATE - MAX_PLY)) return score + ply;
+		return score;
+	}
+
+	private boolean outOfTime() {
+		// the clock and the stop flag are only read every few thousand nodes
+		if ((++nodes & 2047) == 0 && (System.nanoTime() > deadline || stop.get())) stopped = true;
+		return stopped;
+	}
+}
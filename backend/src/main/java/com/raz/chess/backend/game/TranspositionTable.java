@@ -0,0 +1,112 @@
+package com.raz.chess.backend.lobby;
+
+import java.util.Arrays;
+
+public final class TranspositionTable {
+	// search results by position key, one fixed block of memory shared by every search thread and every bot game
+	// an entry is two longs written separately, key ^ data then data, so a torn write from two threads
+	// racing on the same slot fails the check on probe and is just a miss. no locks anywhere
+	//
+	// data packs move (20 bits) | score (16, signed) | depth (8) | bound (2) | age (6)
+	// a bound of 0 means the slot has never been written, so probe returns 0 for "nothing here"
+
+	public static final int EXACT = 1, LOWER = 2, UPPER = 3;
+
+	public enum Replacement {
+		ALWAYS, // newest result wins, cheapest and fine for short searches
+		DEPTH, // keep the deeper of the two, the second slot always takes the newcomer
+		DEPTH_AND_AGE // like DEPTH, but entries from older searches count as empty
+	}
+
+	private static final int MOVE_BITS = 20, SCORE_SHIFT = 20, DEPTH_SHIFT = 36, BOUND_SHIFT = 44, AGE_SHIFT = 46;
+	private static final int AGE_MASK = 63;
+
+	// buckets of two entries, four longs, so a bucket is half a cache line
+	private final long[] slots;
+	private final int bucketMask;
+	private final Replacement replacement;
+	private volatile int age;
+
+	public TranspositionTable(int megabytes, Replacement replacement) {
+		// 32 bytes a bucket, rounded down to a power of two so the index is a mask
+		long buckets = Math.max(1024, (long) megabytes * 1024 * 1024 / 32);
+		int size = Integer.highestOneBit((int) Math.min(buckets, 1 << 27));
+		slots = new long[size * 4];
+		bucketMask = size - 1;
+		this.replacement = replacement;
+	}
+
+	public void newSearch() {
+		// entries written before this count as stale under DEPTH_AND_AGE
+		// called once per root search (not per search thread), so the 6 bit age goes round once every 64 bot moves across all games
+		age = (age + 1) & AGE_MASK;
+	}
+
+	public void clear() {
+		Arrays.fill(slots, 0);
+	}
+
+	public long probe(long key) {
+		int i = index(key);
+		for (int slot = i; slot < i + 4; slot += 2) {
+			long data = slots[slot + 1];
+			if ((slots[slot] ^ data) == key && data != 0) return data;
+		}
+		return 0;
+	}
+
+	public void store(long key, int depth, int bound, int score, int move) {
+		long data = (move & ((1L << MOVE_BITS) - 1))
+				| (long) (score & 0xFFFF) << SCORE_SHIFT
+				| (long) (Math.max(0, Math.min(255, depth))) << DEPTH_SHIFT
+				| (long) bound << BOUND_SHIFT
+				| (long) age << AGE_SHIFT;
+
+		int i = index(key);
+		int slot = i;
+		if (replacement != Replacement.ALWAYS) {
+			long first = slots[i + 1];
+			boolean sameKey = (slots[i] ^ first) == key;
+			boolean stale = replacement == Replacement.DEPTH_AND_AGE && age(first) != age;
+			// the first slot keeps its deeper result unless it's for this position anyway, the second takes what's left
+			if (!sameKey && !stale && first != 0 && depth(first) > depth) slot = i + 2;
+		}
+
+		// keep the old best move if this result didn't find one, it's still the best guess for ordering
+		if (move == 0 && (slots[slot] ^ slots[slot + 1]) == key) {
+			data |= slots[slot + 1] & ((1L << MOVE_BITS) - 1);
+		}
+		slots[slot + 1] = data;
+		slots[slot] = key ^ data;
+	}
+
+	public long sizeInBytes() {
+		return slots.length * 8L;
+	}
+
+	private int index(long key) {
+		// the low bits pick the bucket, the whole key is still checked on probe
+		return ((int) key & bucketMask) << 2;
+	}
+
+	// -- DATA -- //
+	public static int move(long data) {
+		return (int) (data & ((1L << MOVE_BITS) - 1));
+	}
+
+	public static int score(long data) {
+		return (short) (data >>> SCORE_SHIFT);
+	}
+
+	public static int depth(long data) {
+		return (int) (data >>> DEPTH_SHIFT) & 255;
+	}
+
+	public static int bound(long data) {
+		return (int) (data >>> BOUND_SHIFT) & 3;
+	}
+
+	private static int age(long data) {
+		return (int) (data >>> AGE_SHIFT) & AGE_MASK;
+	}
+}
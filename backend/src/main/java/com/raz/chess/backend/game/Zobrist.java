@@ -0,0 +1,108 @@
+package com.raz.chess.backend.lobby;
+
+import java.util.SplittableRandom;
+
+import static com.raz.chess.backend.lobby.Position.*;
+
+public final class Zobrist {
+	// random keys XORed together to give a 64 bit position key
+	// fixed seed, so the same position gets the same key on every server
+	private static final long[][] PIECES = new long[12][64];
+	private static final long[] CASTLING = new long[16]; // one per combination of the four rights
+	private static final long[] EN_PASSANT_FILE = new long[8];
+	private static final long[] MYSTERY_BOX = new long[64];
+	private static final long BLACK_TO_MOVE;
+
+	static {
+		SplittableRandom random = new SplittableRandom(0x5EED_C4E55L);
+		for (int piece = 0; piece < 12; piece++) {
+			for (int sq = 0; sq < 64; sq++) {
+				PIECES[piece][sq] = random.nextLong();
+			}
+		}
+
+		// each right gets its own key, a combination is the XOR of its rights so changes compose
+		long[] rights = {random.nextLong(), random.nextLong(), random.nextLong(), random.nextLong()};
+		for (int mask = 0; mask < 16; mask++) {
+			for (int i = 0; i < 4; i++) {
+				if ((mask & (1 << i)) != 0) CASTLING[mask] ^= rights[i];
+			}
+		}
+
+		for (int file = 0; file < 8; file++) {
+			EN_PASSANT_FILE[file] = random.nextLong();
+		}
+		for (int sq = 0; sq < 64; sq++) {
+			MYSTERY_BOX[sq] = random.nextLong();
+		}
+		BLACK_TO_MOVE = random.nextLong();
+	}
+
+	private Zobrist() {
+	}
+
+	// -- KEYS -- //
+	public static long piece(int piece, int sq) {
+		return PIECES[piece][sq];
+	}
+
+	public static long castling(int rights) {
+		return CASTLING[rights & 15];
+	}
+
+	public static long enPassant(int sq, Position pos) {
+		// only while a pawn stands beside the one that just moved two, ready to take it. otherwise the square
+		// changes nothing and the position has to get the same key as when it's reached without the double push
+		// only the file goes in, the row always follows from the side to move
+		if (sq < 0) return 0;
+		int taker = takerOf(sq);
+		return (Attacks.attacksOf(Position.piece(taker ^ 1, PAWN), sq, 0) & pos.pieces(taker, PAWN)) != 0 ? EN_PASSANT_FILE[colOf(sq)] : 0;
+	}
+
+	public static long enPassant(int sq, Board board) {
+		// the same, read off a board
+		if (sq < 0) return 0;
+		int row = takerOf(sq) == BLACK ? rowOf(sq) - 1 : rowOf(sq) + 1; // where the pawn that moved two stands
+		String taker = takerOf(sq) == BLACK ? "bp" : "wp";
+		for (int col = colOf(sq) - 1; col <= colOf(sq) + 1; col += 2) {
+			String id = col < 0 || col > 7 ? null : board.get(row, col);
+			if (id != null && id.startsWith(taker)) return EN_PASSANT_FILE[colOf(sq)];
+		}
+		return 0;
+	}
+
+	private static int takerOf(int sq) {
+		// the square a white pawn skipped is on the third rank (row 5), black takes it
+		return rowOf(sq) == 5 ? BLACK : WHITE;
+	}
+
+	public static long sideToMove(int colour) {
+		return colour == BLACK ? BLACK_TO_MOVE : 0;
+	}
+
+	public static long mysteryBox(int row, int col) {
+		return row < 0 || col < 0 ? 0 : MYSTERY_BOX[square(row, col)];
+	}
+
+	// -- FULL HASH -- //
+	public static long keyOf(Position pos) {
+		// from scratch, everything else should update the key move by move
+		long key = 0;
+		for (int piece = 0; piece < 12; piece++) {
+			long bb = pos.pieces(piece);
+			while (bb != 0) {
+				key ^= PIECES[piece][Long.numberOfTrailingZeros(bb)];
+				bb &= bb - 1;
+			}
+		}
+		return key ^ castling(pos.getCastling()) ^ enPassant(pos.getEnPassant(), pos) ^ sideToMove(pos.getSideToMove());
+	}
+
+	public static long keyOf(GameState gameState, boolean includeMysteryBox) {
+		long key = keyOf(Position.fromGameState(gameState));
+		if (includeMysteryBox) {
+			key ^= mysteryBox(gameState.getMysteryBoxRow(), gameState.getMysteryBoxCol());
+		}
+		return key;
+	}
+}
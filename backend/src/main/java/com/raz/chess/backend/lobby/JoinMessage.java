@@ -2,6 +2,8 @@ package com.raz.chess.backend.lobby;
 
 public class JoinMessage {
     private String name;
+    private boolean bot; // play against the computer instead of waiting for someone
+    private String fen; // start from this position instead of the usual one
 
     public JoinMessage() {
     }
@@ -17,4 +19,20 @@ public class JoinMessage {
     public void setName(String name) {
         this.name = name;
     }
+
+    public boolean isBot() {
+        return bot;
+    }
+
+    public void setBot(boolean bot) {
+        this.bot = bot;
+    }
+
+    public String getFen() {
+        return fen;
+    }
+
+    public void setFen(String fen) {
+        this.fen = fen;
+    }
 }
@@ -11,6 +11,9 @@ public class LobbyService {
     private String player1Session;
     private String player2;
     private String player2Session;
+    private String bot; // the seat the computer holds, it has no session
+    private String fen; // position asked for by whoever joined with one, null for the usual start
+    private String gameId; // the game the seats are playing, null until it starts
 
     public synchronized LobbyState join(String name, String sessionId) {
         if (player1 == null) {
@@ -26,6 +29,39 @@ public class LobbyService {
         return getState();
     }
     
+    public synchronized LobbyState seatBot(String name) {
+    	// the computer takes whichever seat is still free
+    	if (player1 == null) {
+    		player1 = name;
+    		bot = name;
+    	} else if (player2 == null) {
+    		player2 = name;
+    		bot = name;
+    	}
+    	return getState();
+    }
+    
+    public synchronized LobbyState setFen(String fen) {
+    	// the last player to ask for a position gets it, the game starts from it once both seats are taken
+    	this.fen = fen;
+    	return getState();
+    }
+    
+    public synchronized String startedGame(String gameId) {
+    	// returns the game the seats were playing before, nobody plays that one any more
+    	String previous = this.gameId;
+    	this.gameId = gameId;
+    	return previous;
+    }
+    
+    public synchronized String getGameId() {
+    	return gameId;
+    }
+    
+    public synchronized boolean isBot(String name) {
+    	return name != null && name.equals(bot);
+    }
+    
     public synchronized LobbyState disconnect(String sessionId) {
     	if (sessionId.equals(player1Session)) {
     		player1 = null;
@@ -35,6 +71,17 @@ public class LobbyService {
     		player2Session = null;
     	}
     	
+    	// the computer doesn't stay on its own once its opponent has gone
+    	if (bot != null && player1Session == null && player2Session == null) {
+    		player1 = null;
+    		player2 = null;
+    		bot = null;
+    	}
+    	if (player1 == null && player2 == null) {
+    		fen = null;
+    		gameId = null;
+    	}
+    	
     	return getState();
     }
     
@@ -49,6 +96,8 @@ public class LobbyService {
     }
 
     public synchronized LobbyState getState() {
-        return new LobbyState(player1, player2);
+        LobbyState state = new LobbyState(player1, player2);
+        state.setFen(fen);
+        return state;
     }
 }
@@ -3,6 +3,8 @@ package com.raz.chess.backend.lobby;
 public class LobbyState {
     private String player1;
     private String player2;
+    private String gameId; // set once both players are in and the game has started
+    private String fen; // position the game starts from, null for the usual one
 
     public LobbyState() {
     }
@@ -27,4 +29,20 @@ public class LobbyState {
     public void setPlayer2(String player2) {
         this.player2 = player2;
     }
+
+    public String getGameId() {
+        return gameId;
+    }
+
+    public void setGameId(String gameId) {
+        this.gameId = gameId;
+    }
+
+    public String getFen() {
+        return fen;
+    }
+
+    public void setFen(String fen) {
+        this.fen = fen;
+    }
 }
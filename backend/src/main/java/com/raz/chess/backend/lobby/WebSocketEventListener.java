@@ -10,10 +10,12 @@ import org.springframework.web.socket.messaging.SessionDisconnectEvent;
 @Component
 public class WebSocketEventListener {
 	private final LobbyService lobbyService;
+	private final GameService gameService;
 	private final SimpMessagingTemplate messagingTemplate;
 	
-    public WebSocketEventListener(LobbyService lobbyService, SimpMessagingTemplate template) {
+    public WebSocketEventListener(LobbyService lobbyService, GameService gameService, SimpMessagingTemplate template) {
         this.lobbyService = lobbyService;
+        this.gameService = gameService;
         this.messagingTemplate = template;
     }
     
@@ -25,9 +27,15 @@ public class WebSocketEventListener {
         System.out.println("Client disconnected: " + sessionId);
 
         // broadcast updated lobby to all clients
+        String gameId = lobbyService.getGameId();
         LobbyState updated = lobbyService.disconnect(sessionId);
         messagingTemplate.convertAndSend("/topic/lobby", updated);
         
+        // the last player has gone, so nobody can finish the game and it's dropped
+        if (gameId != null && lobbyService.getGameId() == null) {
+            gameService.abandonGame(gameId);
+        }
+        
         // alert clients that player left
         if (name != null) {
             ChatMessage sys = new ChatMessage(
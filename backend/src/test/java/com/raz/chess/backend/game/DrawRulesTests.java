@@ -0,0 +1,123 @@
+package com.raz.chess.backend.lobby;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+class DrawRulesTests {
+	// games the server ends as drawn: the same position three times, fifty moves each without a pawn move
+	// or capture, and material that can't mate whatever either side does
+
+	private final GameService service = new GameService(MoveJournal.disabled(), GameSnapshots.disabled(), GameArchive.disabled());
+
+	@Test
+	void threefoldRepetition() {
+		GameState game = start(null);
+		int[][] knightsOutAndBack = {{7, 6, 5, 5}, {0, 6, 2, 5}, {5, 5, 7, 6}, {2, 5, 0, 6}};
+
+		// the start position comes round a second time after the first lap, the third time ends it
+		for (int lap = 0; lap < 2; lap++) {
+			for (int i = 0; i < 4; i++) {
+				int[] m = knightsOutAndBack[i];
+				MoveDelta delta = move(game, m[0], m[1], m[2], m[3]);
+				boolean last = lap == 1 && i == 3;
+				assertEquals(last ? GameState.Status.DRAW_REPETITION : null, delta.getStatus());
+			}
+		}
+		assertEquals(8, game.getHalfmoveClock());
+	}
+
+	@Test
+	void repetitionOfAPositionFirstReachedByADoublePush() {
+		// after 1.e4 there's an en passant square but no black pawn to use it, so it's the same position
+		// when the knights come back to it
+		GameState game = start(null);
+		assertNull(move(game, 6, 4, 4, 4).getStatus()); // e4
+		int[][] knightsOutAndBack = {{0, 6, 2, 5}, {7, 6, 5, 5}, {2, 5, 0, 6}, {5, 5, 7, 6}};
+		for (int lap = 0; lap < 2; lap++) {
+			for (int i = 0; i < 4; i++) {
+				int[] m = knightsOutAndBack[i];
+				MoveDelta delta = move(game, m[0], m[1], m[2], m[3]);
+				boolean last = lap == 1 && i == 3;
+				assertEquals(last ? GameState.Status.DRAW_REPETITION : null, delta.getStatus());
+			}
+		}
+	}
+
+	@Test
+	void pawnMoveStartsTheCountsAgain() {
+		GameState game = start(null);
+		move(game, 7, 6, 5, 5); // Nf3
+		assertEquals(1, game.getHalfmoveClock());
+		move(game, 1, 4, 3, 4); // e5
+		assertEquals(0, game.getHalfmoveClock());
+		assertEquals(1, game.getRepetitions().toArray().length);
+	}
+
+	@Test
+	void fiftyMoveRule() {
+		assertEquals(GameState.Status.DRAW_FIFTY_MOVES, move(start("8/8/4k3/8/8/8/4KR2/8 w - - 99 80"), 6, 5, 7, 5).getStatus());
+		assertNull(move(start("8/8/4k3/8/8/8/4KR2/8 w - - 98 80"), 6, 5, 7, 5).getStatus());
+
+		// a capture on the hundredth ply starts the count again instead
+		assertNull(move(start("8/8/4k3/8/8/8/4KR1r/8 w - - 99 80"), 6, 5, 6, 7).getStatus());
+	}
+
+	@Test
+	void mateOnTheHundredthPlyStillWins() {
+		assertEquals(GameState.Status.CHECKMATE, move(start("7k/8/6K1/8/8/8/8/R7 w - - 99 80"), 7, 0, 0, 0).getStatus());
+	}
+
+	@Test
+	void captureDownToBareKings() {
+		assertEquals(GameState.Status.DRAW_INSUFFICIENT_MATERIAL, move(start("8/8/4k3/8/8/4r3/4K3/8 w - - 0 1"), 6, 4, 5, 4).getStatus());
+	}
+
+	@ParameterizedTest(name = "{0}")
+	@CsvSource(delimiter = '|', value = {
+		"K v K                    | 8/8/4k3/8/8/8/4K3/8 w - - 0 1         | DRAW_INSUFFICIENT_MATERIAL",
+		"KB v K                   | 8/8/4k3/8/8/8/4KB2/8 w - - 0 1        | DRAW_INSUFFICIENT_MATERIAL",
+		"KN v K                   | 8/8/4k3/8/8/8/4KN2/8 w - - 0 1        | DRAW_INSUFFICIENT_MATERIAL",
+		"same coloured bishops    | 8/8/4k3/2b5/8/8/4KB2/8 w - - 0 1      | DRAW_INSUFFICIENT_MATERIAL",
+		"opposite coloured bishops| 8/8/4k3/3b4/8/8/4KB2/8 w - - 0 1      | IN_PROGRESS",
+		"KNN v K                  | 8/8/4k3/8/8/8/3NKN2/8 w - - 0 1       | IN_PROGRESS",
+		"KB v KN                  | 8/8/4k3/3n4/8/8/4KB2/8 w - - 0 1      | IN_PROGRESS",
+		"KR v K                   | 8/8/4k3/8/8/8/4KR2/8 w - - 0 1        | IN_PROGRESS",
+		"KP v K                   | 8/8/4k3/8/8/8/4KP2/8 w - - 0 1        | IN_PROGRESS",
+	})
+	void insufficientMaterial(String name, String fen, GameState.Status expected) {
+		assertEquals(expected, start(fen).getStatus());
+	}
+
+	@Test
+	void repetitionCountsSurviveTheTableGrowing() {
+		RepetitionTable table = new RepetitionTable();
+		for (long key = 1; key <= 1000; key++) {
+			table.add(key * 0x9E3779B97F4A7C15L);
+		}
+		assertEquals(2, table.add(500 * 0x9E3779B97F4A7C15L));
+		for (long key = 1; key <= 1000; key++) {
+			assertEquals(key == 500 ? 2 : 1, table.count(key * 0x9E3779B97F4A7C15L));
+		}
+		assertEquals(0, table.count(1001 * 0x9E3779B97F4A7C15L));
+		assertEquals(1001, table.toArray().length);
+
+		table.clear();
+		assertEquals(0, table.count(500 * 0x9E3779B97F4A7C15L));
+	}
+
+	private GameState start(String fen) {
+		GameState game = service.startGame("white", "black", fen);
+		game.setMovesUntilMysteryBox(Integer.MAX_VALUE); // keep the random box off the board
+		return game;
+	}
+
+	private MoveDelta move(GameState game, int fromRow, int fromCol, int toRow, int toCol) {
+		Move move = new Move(fromRow, fromCol, toRow, toCol, game.getTurn().equals("WHITE") ? "white" : "black");
+		move.setGameId(game.getGameId());
+		return service.applyMove(move);
+	}
+}
@@ -0,0 +1,58 @@
+package com.raz.chess.backend.lobby;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class FenTests {
+	// positions read from FEN write back out the same, whether as a Position or as a game ready to play
+
+	@ParameterizedTest
+	@ValueSource(strings = {
+		"rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+		"r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+		"8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+		"rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8",
+		"rnbqkbnr/pppp1ppp/8/4p3/6P1/5P2/PPPPP2P/RNBQKBNR b KQkq g3 0 2",
+		"4k3/8/8/8/8/8/8/R3K2R b K - 37 60",
+	})
+	void roundTrip(String fen) {
+		assertEquals(fen, Fen.of(Fen.toPosition(fen), Fen.halfmoveClockOf(fen), Fen.fullmoveNumberOf(fen)));
+
+		GameState game = Fen.toGameState(fen);
+		assertEquals(fen, Fen.of(game));
+		assertEquals(Fen.toPosition(fen).getKey(), Zobrist.keyOf(game, false));
+	}
+
+	@Test
+	void startingPositionMatchesANewBoard() {
+		GameState game = Fen.toGameState(Fen.START);
+		Board board = new Board();
+		for (int row = 0; row < 8; row++) {
+			for (int col = 0; col < 8; col++) {
+				assertEquals(board.get(row, col), game.getBoard().get(row, col));
+			}
+		}
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {
+		"",
+		"junk",
+		"8/8/8/8/8/8/8/8 w - - 0 1", // no kings
+		"rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBN w KQkq - 0 1", // short rank
+		"rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR x KQkq - 0 1", // no such side
+		"4k3/8/8/8/8/8/8/4KQ2 w - - 0 1 x", // trailing text
+		"4k3/4Q3/8/8/8/8/8/4K3 w - - 0 1", // black is in check with white to move
+		"4k3/8/8/8/8/8/8/4K3 w - e3 0 1", // en passant square on the wrong rank
+		"P3k3/8/8/8/8/8/8/4K3 w - - 0 1", // pawn on the back rank
+		"NNNNNNNN/NNNNNNNN/8/8/8/8/8/K6k w - - 0 1", // 16 knights and a king
+		"4k3/8/8/8/8/8/PPPPPPPP/QQQQK3 w - - 0 1", // 3 queens promoted with all 8 pawns still on the board
+	})
+	void invalidPositionsAreRejected(String fen) {
+		assertThrows(IllegalArgumentException.class, () -> Fen.toGameState(fen));
+	}
+}
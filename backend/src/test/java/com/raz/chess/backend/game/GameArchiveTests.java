@@ -0,0 +1,91 @@
+package com.raz.chess.backend.lobby;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class GameArchiveTests {
+	// lookups by game and by player give the same answers from a sealed segment's index file, from the segment
+	// still being written, and from both again after a restart rebuilds the in-memory index
+
+	private static final int GAMES = 120;
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void findAndExportAcrossSegmentRollAndRestart() throws Exception {
+		GameArchive archive = new GameArchive(true, dir.toString(), 1);
+
+		// names this long make most records 10 to 20 KB, so the first 1 MB segment fills and the archive rolls
+		String filler = "x".repeat(10_000);
+		CountDownLatch written = new CountDownLatch(GAMES);
+		for (int i = 0; i < GAMES; i++) {
+			String white = i % 3 == 0 ? "ann" : filler + i;
+			String black = i % 2 == 0 ? "bob" : filler;
+			archive.append(finished("game-" + i, white, black), written::countDown);
+		}
+		assertTrue(written.await(30, TimeUnit.SECONDS));
+		assertTrue(Files.exists(dir.resolve("games-000001.index")), "the first segment should have been sealed");
+		assertTrue(Files.exists(dir.resolve("games-000002.archive")), "the archive should have rolled");
+
+		check(archive);
+		archive.close();
+
+		GameArchive reopened = new GameArchive(true, dir.toString(), 1);
+		check(reopened);
+		reopened.close();
+	}
+
+	private static void check(GameArchive archive) throws Exception {
+		for (int i = 0; i < GAMES; i++) {
+			ArchivedGame game = archive.find("game-" + i);
+			assertNotNull(game, "game-" + i);
+			assertEquals(GameState.Status.CHECKMATE, game.getStatus());
+			assertArrayEquals(new int[]{MoveList.encode(52, 36, 0), MoveList.encode(12, 28, 0)}, game.getMoves());
+		}
+		assertNull(archive.find("game-" + GAMES));
+
+		assertEquals(GAMES / 3, exported(archive, "ann").size());
+		assertEquals(GAMES / 2, exported(archive, "bob").size());
+		assertEquals(0, exported(archive, "nobody").size());
+
+		List<String> all = exported(archive, null);
+		assertEquals(GAMES, all.size());
+		for (int i = 0; i < GAMES; i++) {
+			assertEquals("game-" + i, all.get(i)); // in the order they finished
+		}
+	}
+
+	private static List<String> exported(GameArchive archive, String player) throws Exception {
+		List<String> ids = new ArrayList<>();
+		int count = archive.export(player, game -> {
+			if (player != null && !player.equals(game.getWhitePlayer()) && !player.equals(game.getBlackPlayer())) {
+				throw new AssertionError(game.getGameId() + " isn't " + player + "'s");
+			}
+			ids.add(game.getGameId());
+		});
+		assertEquals(ids.size(), count);
+		return ids;
+	}
+
+	private static GameState finished(String gameId, String white, String black) {
+		GameState game = new GameState(white, black, GameState.Status.CHECKMATE, "WHITE", new Board());
+		game.setGameId(gameId);
+		game.getHistory().add(MoveList.encode(52, 36, 0)); // e2e4
+		game.getHistory().add(MoveList.encode(12, 28, 0)); // e7e5
+		return game;
+	}
+}
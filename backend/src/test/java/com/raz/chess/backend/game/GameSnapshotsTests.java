@@ -0,0 +1,127 @@
+package com.raz.chess.backend.lobby;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class GameSnapshotsTests {
+	// a restart from the latest snapshot plus the journal written after it gets every running game back as it was
+
+	private static final int INTERVAL = 50;
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void recoveryFromSnapshotAndJournalTailRebuildsTheGames() throws Exception {
+		MoveJournal journal = new MoveJournal(true, dir.toString());
+		GameService service = new GameService(journal, new GameSnapshots(true, dir.toString(), INTERVAL), GameArchive.disabled());
+		service.recover();
+
+		List<GameState> games = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			games.add(service.startGame("white" + i, "black" + i, null));
+		}
+		games.add(service.startGame("white3", "black3", "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1"));
+
+		// one snapshot at the 50th move, the rest are the journal tail after it
+		Random random = new Random(7);
+		int moves = 0;
+		while (moves < INTERVAL + 20) {
+			boolean moved = false;
+			for (GameState game : games) {
+				if (moves < INTERVAL + 20 && playRandomMove(service, game, random)) {
+					moves++;
+					moved = true;
+				}
+			}
+			if (!moved) break;
+		}
+		long segment = awaitSnapshot();
+		journal.awaitDurable();
+		journal.close();
+
+		// the snapshot covers every segment before its own, and those are gone
+		for (long journalled : numbered("moves-", ".journal")) {
+			assertTrue(journalled >= segment, "segment " + journalled + " should have been deleted");
+		}
+
+		GameService recovered = new GameService(new MoveJournal(true, dir.toString()), new GameSnapshots(true, dir.toString(), INTERVAL),
+				GameArchive.disabled());
+		recovered.recover();
+		assertEquals(service.getGameCount(), recovered.getGameCount());
+		assertFalse(service.getGames().isEmpty());
+		for (GameState game : service.getGames()) {
+			GameState back = recovered.getGame(game.getGameId());
+			assertNotNull(back, game.getGameId());
+			assertArrayEquals(BinaryCodec.encodeState(game), BinaryCodec.encodeState(back), game.getGameId());
+			assertArrayEquals(game.getHistory().toArray(), back.getHistory().toArray());
+			assertEquals(game.getStartFen(), back.getStartFen());
+			assertEquals(game.getHalfmoveClock(), back.getHalfmoveClock());
+			assertEquals(game.getPositionKey(), back.getPositionKey());
+			assertArrayEquals(sorted(game.getRepetitions().toArray()), sorted(back.getRepetitions().toArray()));
+		}
+	}
+
+	private static boolean playRandomMove(GameService service, GameState game, Random random) {
+		if (service.getGame(game.getGameId()) == null || game.getStatus() != GameState.Status.IN_PROGRESS) return false;
+
+		long[] targets = GameRules.legalTargets(game);
+		List<int[]> legal = new ArrayList<>();
+		for (int from = 0; from < 64; from++) {
+			for (long bb = targets[from]; bb != 0; bb &= bb - 1) {
+				legal.add(new int[]{from, Long.numberOfTrailingZeros(bb)});
+			}
+		}
+		int[] pick = legal.get(random.nextInt(legal.size()));
+		Move move = new Move(Position.rowOf(pick[0]), Position.colOf(pick[0]), Position.rowOf(pick[1]), Position.colOf(pick[1]),
+				game.getTurn().equals("WHITE") ? game.getWhitePlayer() : game.getBlackPlayer());
+		move.setGameId(game.getGameId());
+		move.setPromotion("n");
+		return service.applyMove(move) != null;
+	}
+
+	private long awaitSnapshot() throws Exception {
+		// the snapshot is taken on its own thread, it's done once the journal before it has been deleted
+		for (int tries = 0; tries < 500; tries++) {
+			List<Long> snapshots = numbered("snapshot-", ".bin");
+			if (!snapshots.isEmpty()) {
+				long segment = snapshots.get(snapshots.size() - 1);
+				if (numbered("moves-", ".journal").stream().allMatch(s -> s >= segment)) return segment;
+			}
+			Thread.sleep(10);
+		}
+		throw new AssertionError("no snapshot was taken");
+	}
+
+	private List<Long> numbered(String prefix, String suffix) throws Exception {
+		List<Long> numbers = new ArrayList<>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, prefix + "*" + suffix)) {
+			for (Path f : files) {
+				String name = f.getFileName().toString();
+				numbers.add(Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length())));
+			}
+		}
+		numbers.sort(null);
+		return numbers;
+	}
+
+	private static long[] sorted(long[] keys) {
+		long[] copy = keys.clone();
+		Arrays.sort(copy);
+		return copy;
+	}
+}
@@ -0,0 +1,71 @@
+package com.raz.chess.backend.lobby;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class MoveJournalTests {
+	// a record cut off by a crash is dropped on replay, and what's appended next follows the last good record
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void tornTailIsCutOffAndAppendsResumeAfterIt() throws Exception {
+		MoveJournal journal = new MoveJournal(true, dir.toString());
+		GameState game = new GameState("white", "black", GameState.Status.IN_PROGRESS, "WHITE", new Board());
+		game.setGameId("g1");
+		journal.appendStart(game);
+		game.setSequence(1);
+		journal.appendMove(game, new Move(6, 4, 4, 4, "white"));
+		journal.awaitDurable();
+		journal.close();
+
+		// the start of a record whose length says there's more than there is, as if the server died writing it
+		Path segment = dir.resolve("moves-000001.journal");
+		long good = Files.size(segment);
+		Files.write(segment, new byte[]{0, 0, 0, 40, 2, 0, 3}, StandardOpenOption.APPEND);
+
+		MoveJournal reopened = new MoveJournal(true, dir.toString());
+		Recorder replayed = new Recorder();
+		assertEquals(2, reopened.replay(0, replayed));
+		assertEquals(List.of("start g1 white black", "move g1 1 52-36"), replayed.records);
+		assertEquals(good, Files.size(segment));
+
+		reopened.appendEnd("g1");
+		reopened.awaitDurable();
+		reopened.close();
+
+		MoveJournal again = new MoveJournal(true, dir.toString());
+		Recorder all = new Recorder();
+		assertEquals(3, again.replay(0, all));
+		assertEquals(List.of("start g1 white black", "move g1 1 52-36", "end g1"), all.records);
+		again.close();
+	}
+
+	private static class Recorder implements MoveJournal.Listener {
+		final List<String> records = new ArrayList<>();
+
+		@Override
+		public void onStart(String gameId, String white, String black, int movesUntilMysteryBox, String startFen) {
+			records.add("start " + gameId + " " + white + " " + black);
+		}
+
+		@Override
+		public void onMove(String gameId, long seq, int from, int to, char promotion, int boxSquare, int movesUntilMysteryBox) {
+			records.add("move " + gameId + " " + seq + " " + from + "-" + to);
+		}
+
+		@Override
+		public void onEnd(String gameId) {
+			records.add("end " + gameId);
+		}
+	}
+}
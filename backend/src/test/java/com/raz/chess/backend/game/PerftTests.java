@@ -0,0 +1,48 @@
+package com.raz.chess.backend.lobby;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+class PerftTests {
+	// the standard reference positions (chessprogramming.org/Perft_Results), kept to depths that run in seconds
+
+	@ParameterizedTest(name = "{0} depth {2}")
+	@CsvSource(delimiter = '|', value = {
+		"start      | rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1              | 4 | 197281",
+		"kiwipete   | r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1 | 3 | 97862",
+		"position 3 | 8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1                            | 5 | 674624",
+		"position 4 | r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1     | 3 | 9467",
+		"position 5 | rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8            | 3 | 62379",
+		"position 6 | r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10 | 3 | 89890",
+	})
+	void referencePositions(String name, String fen, int depth, long expected) {
+		assertEquals(expected, Perft.perft(Fen.toPosition(fen), depth));
+	}
+
+	@Test
+	void divideSumsToPerft() {
+		Map<String, Long> divide = Perft.divide(Fen.toPosition(Fen.START), 3, null);
+		assertEquals(20, divide.size());
+		assertEquals(600, divide.get("e2e4"));
+		assertEquals(8902, Perft.sum(divide));
+	}
+
+	@Test
+	void parallelWithCacheMatchesSequential() {
+		String kiwipete = "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1";
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			Map<String, Long> divide = Perft.divide(Fen.toPosition(kiwipete), 4, new PerftCache(16), pool);
+			assertEquals(divide, Perft.divide(Fen.toPosition(kiwipete), 4, null));
+			assertEquals(4085603, Perft.sum(divide));
+		} finally {
+			pool.shutdown();
+		}
+	}
+}
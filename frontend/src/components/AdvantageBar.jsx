@@ -0,0 +1,30 @@
+import React from "react";
+
+// white's share of the bar from the server's evaluation (centipawns, positive when white is better)
+function whiteShare(advantage, gameState) {
+  if (gameState?.status === "CHECKMATE") {
+    // the side to move is the one that got mated
+    return gameState.turn === "WHITE" ? 0 : 100;
+  }
+  if (!advantage || advantage.seq !== gameState?.sequence) return null;
+  // same curve chess sites use, a pawn up is about 64%
+  return 100 / (1 + Math.pow(10, -advantage.score / 400));
+}
+
+function AdvantageBar({ advantage, gameState }) {
+  const share = whiteShare(advantage, gameState);
+  const white = share == null ? 50 : share;
+  const label = advantage && share != null && gameState?.status !== "CHECKMATE"
+    ? (advantage.score >= 0 ? "+" : "") + (advantage.score / 100).toFixed(1)
+    : "";
+
+  return (
+    <div className="advantage-bar" title={label}>
+      <div className="advantage-black" style={{ height: `${100 - white}%` }} />
+      <div className="advantage-white" style={{ height: `${white}%` }} />
+      <span className="advantage-label">{label}</span>
+    </div>
+  );
+}
+
+export default AdvantageBar;
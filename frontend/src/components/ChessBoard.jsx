@@ -12,7 +12,15 @@ import {
 import { motion, AnimatePresence } from "motion/react";
 
 const TILE_SIZE = 60;
-function ChessBoard({ gameState, myName, onAttemptMove, gameStatus }) {
+
+// draws the server calls that the board can't see for itself
+const DRAW_REASONS = {
+  DRAW_REPETITION: "threefold repetition",
+  DRAW_FIFTY_MOVES: "the fifty-move rule",
+  DRAW_INSUFFICIENT_MATERIAL: "insufficient material",
+};
+
+function ChessBoard({ gameState, myName, onAttemptMove, gameStatus, legalMoves }) {
   const [selected, setSelected] = useState(null); // [row, col] or null
   const [moveSquares, setMoveSquares] = useState([]);
 
@@ -29,6 +37,12 @@ function ChessBoard({ gameState, myName, onAttemptMove, gameStatus }) {
 
   const isFlipped = myColor === "b";
 
+  // legal moves from the server, only used when they match the position on screen
+  const serverMoves =
+    legalMoves && gameState && legalMoves.seq === gameState.sequence
+      ? legalMoves.moves
+      : null;
+
   // check if king is in check
   const inCheck = isKingInCheck(board, turn);
   const kingPos = inCheck ? findKing(board, turn) : null;
@@ -65,8 +79,12 @@ function ChessBoard({ gameState, myName, onAttemptMove, gameStatus }) {
         return;
       }
 
-      // compute the squares this piece can move to
-      const validMoves = computeValidMoves(board, row, col, gameState);
+      // the server's legal moves if they're for this position, otherwise work them out locally
+      const validMoves = serverMoves
+        ? serverMoves
+            .filter(([fromRow, fromCol]) => fromRow === row && fromCol === col)
+            .map(([, , toRow, toCol]) => [toRow, toCol])
+        : computeValidMoves(board, row, col, gameState);
 
       setSelected([row, col]);
       setMoveSquares(validMoves);
@@ -81,14 +99,10 @@ function ChessBoard({ gameState, myName, onAttemptMove, gameStatus }) {
     }
 
     // local check
-    const tmpBoard = applyMoveIfLegal(
-      board,
-      selected,
-      [row, col],
-      turn,
-      gameState
-    );
-    if (!tmpBoard) {
+    const isLegal = serverMoves
+      ? moveSquares.some(([r, c]) => r === row && c === col)
+      : applyMoveIfLegal(board, selected, [row, col], turn, gameState) !== null;
+    if (!isLegal) {
       setSelected(null);
       setMoveSquares([]);
       return;
@@ -233,6 +247,13 @@ function ChessBoard({ gameState, myName, onAttemptMove, gameStatus }) {
           Stalemate. It's a draw!
         </div>
       )}
+      {gameState && DRAW_REASONS[gameState.status] && (
+        <div
+          style={{ textAlign: "center", color: "orange", fontWeight: "bold" }}
+        >
+          Draw by {DRAW_REASONS[gameState.status]}.
+        </div>
+      )}
       {/* top name should always be the opponent */}
       <div
         style={{
@@ -5,6 +5,52 @@ import { Client } from "@stomp/stompjs";
 import { useLocation } from "react-router-dom";
 import { getGameStatus } from "../game/engine";
 import PowerUp from "../components/PowerUp";
+import AdvantageBar from "../components/AdvantageBar";
+
+// apply one server move delta to the previous game state
+function applyMoveDelta(prev, delta) {
+  const grid = prev.board.grid.map((row) => row.slice());
+  const piece = grid[delta.fromRow][delta.fromCol];
+
+  if (delta.capturedRow != null) {
+    // en passant, the captured pawn isn't on the target square
+    grid[delta.capturedRow][delta.capturedCol] = null;
+  }
+  grid[delta.fromRow][delta.fromCol] = null;
+  grid[delta.toRow][delta.toCol] = delta.promotion || piece;
+
+  if (delta.rookFromCol != null) {
+    grid[delta.fromRow][delta.rookToCol] = grid[delta.fromRow][delta.rookFromCol];
+    grid[delta.fromRow][delta.rookFromCol] = null;
+  }
+
+  const next = {
+    ...prev,
+    board: { ...prev.board, grid },
+    sequence: delta.seq,
+    turn: prev.turn === "WHITE" ? "BLACK" : "WHITE",
+  };
+
+  if (delta.status) next.status = delta.status;
+  if (delta.castling != null) {
+    next.whiteKingSideCastle = (delta.castling & 1) !== 0;
+    next.whiteQueenSideCastle = (delta.castling & 2) !== 0;
+    next.blackKingSideCastle = (delta.castling & 4) !== 0;
+    next.blackQueenSideCastle = (delta.castling & 8) !== 0;
+  }
+  if (delta.enPassantRow != null) {
+    next.enPassantRow = delta.enPassantRow;
+    next.enPassantCol = delta.enPassantCol;
+  }
+  if (delta.mysteryBoxRow != null) {
+    next.mysteryBoxRow = delta.mysteryBoxRow;
+    next.mysteryBoxCol = delta.mysteryBoxCol;
+  }
+  if (delta.whitePlayerPowerUp != null) next.whitePlayerPowerUp = delta.whitePlayerPowerUp;
+  if (delta.blackPlayerPowerUp != null) next.blackPlayerPowerUp = delta.blackPlayerPowerUp;
+
+  return next;
+}
 
 function Game() {
   const [client, setClient] = useState(null);
@@ -12,9 +58,15 @@ function Game() {
   const [messages, setMessages] = useState([]);
   const [gameState, setGameState] = useState(null);
   const [gameStatus, setGameStatus] = useState("NORMAL");
+  const [legalMoves, setLegalMoves] = useState(null);
+  const [advantage, setAdvantage] = useState(null);
+  const gameIdRef = useRef(null);
+  const gameStateRef = useRef(null);
 
   const query = new URLSearchParams(useLocation().search);
   const name = query.get("name");
+  const bot = query.get("bot") === "1";
+  const fen = query.get("fen"); // optional starting position
 
   useEffect(() => {
     const stompClient = new Client({
@@ -25,36 +77,92 @@ function Game() {
       onConnect: () => {
         console.log("Connected!");
 
-        // listen for lobby updates (players in game)
-        stompClient.subscribe("/topic/lobby", (msg) => {
-          const state = JSON.parse(msg.body);
-          console.log("Lobby state:", state);
-          setLobby(state);
-        });
-
-        // listen for game state
-        stompClient.subscribe("/topic/game", (msg) => {
-          const gameState = JSON.parse(msg.body);
-          console.log("Game state:", gameState);
+        // every legal move in the current position, asked for once per position so selecting pieces is local
+        const requestLegalMoves = (gameId) => {
+          const sub = stompClient.subscribe(`/app/game/${gameId}/moves`, (msg) => {
+            sub.unsubscribe();
+            setLegalMoves(JSON.parse(msg.body));
+          });
+        };
+
+        // the server's evaluation of the position, for the advantage bar
+        const requestAdvantage = (gameId) => {
+          const sub = stompClient.subscribe(`/app/game/${gameId}/eval`, (msg) => {
+            sub.unsubscribe();
+            setAdvantage(JSON.parse(msg.body));
+          });
+        };
+
+        const showGameState = (gameState) => {
+          gameStateRef.current = gameState;
           setGameState(gameState);
+          if (gameState.gameId && gameState.status === "IN_PROGRESS") {
+            requestLegalMoves(gameState.gameId);
+            requestAdvantage(gameState.gameId);
+          }
 
           // update game status (NORMAL, CHECK, etc)
           const board = gameState.board.grid;
           const colorToMove = gameState.turn === "WHITE" ? "w" : "b";
           const status = getGameStatus(board, colorToMove);
           setGameStatus(status);
-        });
-
-        // listen for chat updates
-        stompClient.subscribe("/topic/chat", (msg) => {
+        };
+
+        // full snapshot, asked for once when the game starts and again if we miss a delta
+        const requestSnapshot = (gameId) => {
+          const sub = stompClient.subscribe(`/app/game/${gameId}`, (msg) => {
+            sub.unsubscribe();
+            const gameState = JSON.parse(msg.body);
+            console.log("Game state:", gameState);
+            showGameState(gameState);
+          });
+        };
+
+        // the server only sends what each move changed
+        const onMoveDelta = (msg) => {
+          const delta = JSON.parse(msg.body);
+          const prev = gameStateRef.current;
+          if (!prev || delta.seq !== prev.sequence + 1) {
+            // out of step, resync
+            if (!prev || delta.seq > prev.sequence) requestSnapshot(delta.gameId);
+            return;
+          }
+          showGameState(applyMoveDelta(prev, delta));
+        };
+
+        const onChat = (msg) => {
           const chat = JSON.parse(msg.body);
           setMessages((prev) => [...prev, chat]);
+        };
+
+        // listen for lobby updates (players in game)
+        // once the game starts the lobby state carries its id, then we switch to that game's topics
+        stompClient.subscribe("/topic/lobby", (msg) => {
+          const state = JSON.parse(msg.body);
+          console.log("Lobby state:", state);
+          setLobby(state);
+
+          if (state.gameId && gameIdRef.current !== state.gameId) {
+            gameIdRef.current = state.gameId;
+            stompClient.subscribe(`/topic/game/${state.gameId}`, onMoveDelta);
+            stompClient.subscribe(`/topic/chat/${state.gameId}`, onChat);
+            requestSnapshot(state.gameId);
+          }
         });
 
+        // moves the server rejected, only sent to us
+        stompClient.subscribe("/user/queue/errors", (msg) => {
+          const rejection = JSON.parse(msg.body);
+          console.warn("Move rejected:", rejection.reason);
+        });
+
+        // lobby chat until the game starts
+        stompClient.subscribe("/topic/chat", onChat);
+
         // tell server we joined
         stompClient.publish({
           destination: "/app/join",
-          body: JSON.stringify({ name }),
+          body: JSON.stringify({ name, bot, fen }),
         });
       },
     });
@@ -71,7 +179,7 @@ function Game() {
     if (!text || text.trim() === "") return;
 
     client.publish({
-      destination: "/app/chat",
+      destination: gameIdRef.current ? `/app/chat/${gameIdRef.current}` : "/app/chat",
       body: JSON.stringify({
         type: "CHAT",
         sender: name,
@@ -84,6 +192,7 @@ function Game() {
     <div className="game-layout">
       <PowerUp gameState={gameState} myName={name} />
       <div className="board-pane">
+        <AdvantageBar advantage={advantage} gameState={gameState} />
         <ChessBoard
           gameState={gameState}
           myName={name}
@@ -93,6 +202,7 @@ function Game() {
             client.publish({
               destination: "/app/move",
               body: JSON.stringify({
+                gameId: gameState?.gameId,
                 fromRow: from[0],
                 fromCol: from[1],
                 toRow: to[0],
@@ -103,6 +213,7 @@ function Game() {
             });
           }}
           gameStatus={gameStatus}
+          legalMoves={legalMoves}
         />
       </div>
       <div className="chat-pane">
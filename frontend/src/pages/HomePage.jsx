@@ -10,12 +10,18 @@ function HomePage() {
     navigate(`/game?name=${encodeURIComponent(name)}`);
   };
 
+  // same lobby, but the server's bot takes the other seat
+  const playComputer = () => {
+    navigate(`/game?name=${encodeURIComponent(name)}&bot=1`);
+  };
+
   return (
     <div>
       <h1>OO Chess</h1>
       <h3>Input your name:</h3>
       <input onChange={(e) => setName(e.target.value)}></input>
       <button onClick={connect}>Connect</button>
+      <button onClick={playComputer}>Play the computer</button>
     </div>
   );
 }